@@ -0,0 +1,43 @@
+package pt.up.fe.comp.bench;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inputs of the benchmarks: either a fixture, given by its path inside {@code test/fixtures}, or a synthetic program,
+ * given as {@code synthetic:<methods>x<statements>}.
+ */
+public class BenchmarkPrograms {
+
+    public static String load(String program) {
+        if (program.startsWith("synthetic:")) {
+            String[] size = program.substring("synthetic:".length()).split("x");
+            if (size.length != 2) {
+                throw new RuntimeException("Expected a synthetic program as 'synthetic:<methods>x<statements>', got '"
+                        + program + "'.");
+            }
+            return SyntheticPrograms.generate(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        }
+
+        File file = new File("test/fixtures", program);
+        if (!file.isFile()) {
+            throw new RuntimeException("Expected a path to an existing fixture, got '" + program + "'.");
+        }
+        return SpecsIo.read(file);
+    }
+
+    /**
+     * @return a config that runs every optimization, so that all the stages have work to do
+     */
+    public static Map<String, String> config(String program) {
+        Map<String, String> config = new HashMap<>();
+        config.put("inputFile", program);
+        config.put("optimize", "true");
+        config.put("registerAllocation", "0");
+        config.put("debug", "false");
+        return config;
+    }
+}
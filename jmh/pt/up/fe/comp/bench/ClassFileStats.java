@@ -0,0 +1,104 @@
+package pt.up.fe.comp.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the size and limits of the methods of a class file, which is all the benchmarks need of it.
+ */
+public class ClassFileStats {
+
+    public record MethodStats(String name, String descriptor, int codeLength, int maxStack, int maxLocals) {
+        public String getSignature() {
+            return name + descriptor;
+        }
+    }
+
+    public static List<MethodStats> read(byte[] classFile) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile))) {
+            if (in.readInt() != 0xCAFEBABE) {
+                throw new RuntimeException("Not a class file");
+            }
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+
+            String[] utf8 = readConstantPool(in);
+
+            in.readUnsignedShort(); // access flags
+            in.readUnsignedShort(); // this class
+            in.readUnsignedShort(); // super class
+            in.skipNBytes(2L * in.readUnsignedShort()); // interfaces
+
+            int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++) {
+                in.skipNBytes(6); // access flags, name and descriptor
+                skipAttributes(in);
+            }
+
+            List<MethodStats> methods = new ArrayList<>();
+            int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                in.readUnsignedShort(); // access flags
+                String name = utf8[in.readUnsignedShort()];
+                String descriptor = utf8[in.readUnsignedShort()];
+
+                MethodStats stats = new MethodStats(name, descriptor, 0, 0, 0);
+                int attributeCount = in.readUnsignedShort();
+                for (int j = 0; j < attributeCount; j++) {
+                    String attributeName = utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (attributeName.equals("Code")) {
+                        int maxStack = in.readUnsignedShort();
+                        int maxLocals = in.readUnsignedShort();
+                        int codeLength = in.readInt();
+                        stats = new MethodStats(name, descriptor, codeLength, maxStack, maxLocals);
+                        in.skipNBytes(length - 8);
+                    } else {
+                        in.skipNBytes(length);
+                    }
+                }
+                methods.add(stats);
+            }
+
+            return methods;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read class file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the UTF-8 entries of the constant pool by index, null for the other entries
+     */
+    private static String[] readConstantPool(DataInputStream in) throws IOException {
+        String[] utf8 = new String[in.readUnsignedShort()];
+
+        for (int index = 1; index < utf8.length; index++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[index] = in.readUTF();
+                case 7, 8, 16, 19, 20 -> in.skipNBytes(2);
+                case 15 -> in.skipNBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                case 5, 6 -> {
+                    // Longs and doubles take two entries
+                    in.skipNBytes(8);
+                    index++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        return utf8;
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.readUnsignedShort(); // name
+            in.skipNBytes(in.readInt());
+        }
+    }
+}
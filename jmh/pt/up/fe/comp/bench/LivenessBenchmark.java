@@ -0,0 +1,55 @@
+package pt.up.fe.comp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.analysis.Analyser;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.ollir.Optimizer;
+import pt.up.fe.comp.ollir.optimize.MethodDataFlowAnalysis;
+import pt.up.fe.comp.parse.Parser;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the liveness analysis of a single method as it grows, to check that it scales about linearly with the
+ * number of instructions (the largest method has over 10000).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LivenessBenchmark {
+
+    @Param({"250", "500", "1000", "2000", "4000"})
+    public int statements;
+
+    private OllirResult ollirResult;
+    private Method method;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String program = "synthetic:1x" + statements;
+        Map<String, String> config = BenchmarkPrograms.config(program);
+
+        Optimizer optimizer = new Optimizer();
+        ollirResult = optimizer.toOllir(optimizer.optimize(new Analyser().semanticAnalysis(
+                new Parser().parse(BenchmarkPrograms.load(program), config))));
+
+        method = ollirResult.getOllirClass().getMethods().stream()
+                .filter(candidate -> candidate.getMethodName().equals("method0"))
+                .findFirst()
+                .orElseThrow();
+        // The liveness analysis does not change the CFG, so it is only built once
+        method.buildCFG();
+    }
+
+    @Benchmark
+    public MethodDataFlowAnalysis liveness() {
+        MethodDataFlowAnalysis methodFlow = new MethodDataFlowAnalysis(method, ollirResult);
+        methodFlow.calcInOut();
+        return methodFlow;
+    }
+}
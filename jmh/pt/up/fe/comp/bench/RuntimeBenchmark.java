@@ -0,0 +1,300 @@
+package pt.up.fe.comp.bench;
+
+import pt.up.fe.comp.CompilationPipeline;
+import pt.up.fe.comp.Launcher;
+import pt.up.fe.comp.jasmin.JasminAssembler.AssembledClass;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compares the code we generate for the fixtures, at each optimization setting, with what javac generates for the
+ * same program: runs both in this JVM after a warm-up and reports the execution time along with the code size,
+ * max_stack and max_locals of every method.
+ * <p>
+ * Run with {@code gradle runtimeBenchmark -PbenchArgs="[--warmup=<runs>] [--runs=<runs>] [fixtures...]"}, where the
+ * fixtures are given by their path inside {@code test/fixtures}. The programs must not read the standard input, since
+ * the Java-- libraries keep their reader of it between runs.
+ */
+public class RuntimeBenchmark {
+
+    private static final List<String> DEFAULT_PROGRAMS = List.of("public/HelloWorld.jmm", "public/FindMaximum.jmm",
+            "public/QuickSort.jmm", "public/Lazysort.jmm", "public/WhileAndIf.jmm", "public/Simple.jmm",
+            "custom/ComplexExpressions1.jmm");
+
+    private static final Map<String, List<String>> SETTINGS = new LinkedHashMap<>();
+
+    static {
+        SETTINGS.put("default", List.of());
+        SETTINGS.put("-o", List.of("-o"));
+        SETTINGS.put("-r=0", List.of("-r=0"));
+        SETTINGS.put("-o -r=0", List.of("-o", "-r=0"));
+    }
+
+    private static final File JMM_LIBS = new File("libs-jmm/compiled");
+    private static final Pattern CLASS_NAME = Pattern.compile("\\bclass\\s+(\\w+)");
+
+    /**
+     * The classes of a program compiled in one of the ways being compared, or why it could not be compiled.
+     */
+    private record Variant(String name, String mainClass, Map<String, byte[]> classes, String error) {
+        static Variant failed(String name, String error) {
+            return new Variant(name, null, Map.of(), error);
+        }
+    }
+
+    private final int warmupRuns;
+    private final int measuredRuns;
+
+    public RuntimeBenchmark(int warmupRuns, int measuredRuns) {
+        this.warmupRuns = warmupRuns;
+        this.measuredRuns = measuredRuns;
+    }
+
+    public static void main(String[] args) {
+        int warmupRuns = 20;
+        int measuredRuns = 50;
+        List<String> programs = new ArrayList<>();
+
+        for (String arg: args) {
+            if (arg.startsWith("--warmup=")) {
+                warmupRuns = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--runs=")) {
+                measuredRuns = Integer.parseInt(arg.substring("--runs=".length()));
+            } else {
+                programs.add(arg);
+            }
+        }
+        if (programs.isEmpty()) {
+            programs.addAll(DEFAULT_PROGRAMS);
+        }
+
+        RuntimeBenchmark benchmark = new RuntimeBenchmark(warmupRuns, Math.max(1, measuredRuns));
+        for (String program: programs) {
+            System.out.println(benchmark.compare(program));
+        }
+    }
+
+    public String compare(String program) {
+        String code = BenchmarkPrograms.load(program);
+
+        List<Variant> variants = new ArrayList<>();
+        variants.add(compileWithJavac(code));
+        SETTINGS.forEach((name, settingArgs) -> variants.add(compileWithJmm(name, settingArgs, program, code)));
+
+        List<String> times = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        List<Map<String, ClassFileStats.MethodStats>> methods = new ArrayList<>();
+        for (Variant variant: variants) {
+            String error = variant.error();
+            if (error == null) {
+                try {
+                    times.add(run(variant));
+                } catch (RuntimeException e) {
+                    error = e.getMessage();
+                }
+            }
+            if (error != null) {
+                times.add("failed");
+                errors.add(variant.name() + ": " + error);
+            }
+            methods.add(methodStats(variant));
+        }
+
+        return report(program, variants, times, methods) + String.join("\n", errors) + "\n";
+    }
+
+    private Variant compileWithJmm(String name, List<String> settingArgs, String program, String code) {
+        List<String> args = new ArrayList<>(settingArgs);
+        args.add("-i=" + program);
+        Map<String, String> config = Launcher.parseCommandArgs(args.toArray(new String[0]));
+
+        CompilationPipeline.Result result = CompilationPipeline.compile(code, config, null);
+        if (CompilationPipeline.hasErrors(result.getReports())) {
+            return Variant.failed(name, result.getReports().stream()
+                    .filter(report -> report.getType() == ReportType.ERROR)
+                    .map(report -> report.getMessage()
+                            + report.getException().map(exception -> " (" + exception.getMessage() + ")").orElse(""))
+                    .findFirst().orElse(""));
+        }
+
+        AssembledClass assembledClass = result.getAssembledClass();
+        String className = assembledClass.getClassName().replace('/', '.');
+        return new Variant(name, className, Map.of(className, assembledClass.getBytes()), null);
+    }
+
+    private Variant compileWithJavac(String code) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            return Variant.failed("javac", "javac is only available when running on a JDK");
+        }
+
+        Matcher className = CLASS_NAME.matcher(code);
+        if (!className.find()) {
+            return Variant.failed("javac", "no class found");
+        }
+
+        Path folder = null;
+        try {
+            folder = Files.createTempDirectory("jmm-javac");
+            Path source = folder.resolve(className.group(1) + ".java");
+            Files.writeString(source, toJava(code));
+
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int status = javac.run(null, null, errors, "-nowarn", "-d", folder.toString(),
+                    "-cp", JMM_LIBS.getPath(), source.toString());
+            if (status != 0) {
+                return Variant.failed("javac", errors.toString().lines().findFirst().orElse(""));
+            }
+
+            Map<String, byte[]> classes = new HashMap<>();
+            try (Stream<Path> files = Files.list(folder)) {
+                for (Path classFile: files.filter(path -> path.toString().endsWith(".class")).toList()) {
+                    classes.put(SpecsIo.removeExtension(classFile.getFileName().toString()),
+                            Files.readAllBytes(classFile));
+                }
+            }
+
+            return new Variant("javac", className.group(1), classes, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (folder != null) SpecsIo.deleteFolder(folder.toFile());
+        }
+    }
+
+    /**
+     * Java-- is a subset of Java, except for the imports of classes of the default package, which Java does not
+     * allow. Those classes only need to be in the classpath.
+     */
+    private static String toJava(String jmmCode) {
+        return jmmCode.replaceAll("(?m)^\\s*import\\s+\\w+\\s*;", "");
+    }
+
+    /**
+     * @return the mean time of a run in microseconds
+     * @throws RuntimeException with the reason if the program could not run
+     */
+    private String run(Variant variant) {
+        PrintStream out = System.out;
+
+        try {
+            Class<?> mainClass = new VariantClassLoader(variant.classes())
+                    .loadClass(variant.mainClass());
+            Method main = mainClass.getMethod("main", String[].class);
+            // Java-- classes are not public
+            main.setAccessible(true);
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < warmupRuns; run++) {
+                main.invoke(null, (Object) new String[0]);
+            }
+
+            long start = System.nanoTime();
+            for (int run = 0; run < measuredRuns; run++) {
+                main.invoke(null, (Object) new String[0]);
+            }
+            return String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e3 / measuredRuns);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause().toString(), e.getCause());
+        } catch (ReflectiveOperationException | LinkageError | IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static Map<String, ClassFileStats.MethodStats> methodStats(Variant variant) {
+        Map<String, ClassFileStats.MethodStats> methods = new LinkedHashMap<>();
+        if (variant.error() != null) return methods;
+
+        for (ClassFileStats.MethodStats method: ClassFileStats.read(variant.classes().get(variant.mainClass()))) {
+            methods.put(method.getSignature(), method);
+        }
+        return methods;
+    }
+
+    private String report(String program, List<Variant> variants, List<String> times,
+                          List<Map<String, ClassFileStats.MethodStats>> methods) {
+        Set<String> signatures = new LinkedHashSet<>();
+        methods.forEach(variantMethods -> signatures.addAll(variantMethods.keySet()));
+
+        List<List<String>> rows = new ArrayList<>();
+        rows.add(row("", variants.stream().map(Variant::name).toList()));
+        rows.add(row("Run time (us)", times));
+
+        for (String signature: signatures) {
+            rows.add(row(signature, methods.stream()
+                    .map(variantMethods -> variantMethods.get(signature))
+                    .map(method -> method == null ? "-"
+                            : method.codeLength() + "/" + method.maxStack() + "/" + method.maxLocals())
+                    .toList()));
+        }
+
+        rows.add(row("Total code size", methods.stream()
+                .map(variantMethods -> variantMethods.isEmpty() ? "-" : String.valueOf(variantMethods.values().stream()
+                        .mapToInt(ClassFileStats.MethodStats::codeLength)
+                        .sum()))
+                .toList()));
+
+        int[] widths = new int[variants.size() + 1];
+        for (List<String> row: rows) {
+            for (int i = 0; i < row.size(); i++) {
+                widths[i] = Math.max(widths[i], row.get(i).length() + 2);
+            }
+        }
+
+        StringBuilder report = new StringBuilder(program).append(" (mean of ").append(measuredRuns)
+                .append(" runs after ").append(warmupRuns).append(" warm-up runs; methods as code/max_stack/max_locals)\n");
+        for (List<String> row: rows) {
+            for (int i = 0; i < row.size(); i++) {
+                report.append(String.format("%-" + widths[i] + "s", row.get(i)));
+            }
+            report.append('\n');
+        }
+
+        return report.toString();
+    }
+
+    private static List<String> row(String header, List<String> cells) {
+        List<String> row = new ArrayList<>();
+        row.add(header);
+        row.addAll(cells);
+        return row;
+    }
+
+    /**
+     * Loads the classes of a variant along with the Java-- libraries, which must come from the same loader because
+     * package-private classes of the default package are only accessible within it. The compiler is not visible.
+     */
+    private static class VariantClassLoader extends URLClassLoader {
+        private final Map<String, byte[]> classes;
+
+        VariantClassLoader(Map<String, byte[]> classes) throws IOException {
+            super(new URL[]{JMM_LIBS.toURI().toURL()}, ClassLoader.getPlatformClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                return super.findClass(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
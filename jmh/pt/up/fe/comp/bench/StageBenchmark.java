@@ -0,0 +1,158 @@
+package pt.up.fe.comp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import pt.up.fe.comp.CompilationPipeline;
+import pt.up.fe.comp.analysis.Analyser;
+import pt.up.fe.comp.jasmin.OllirToJasmin;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.ollir.Optimizer;
+import pt.up.fe.comp.parse.Parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each compilation stage on its own. Run with {@code gradle jmh}, which also reports the allocations
+ * of each stage through the GC profiler.
+ * <p>
+ * The stages after parsing change their input (the AST is annotated and folded, dead variables are removed and
+ * registers assigned in place), so each one gets a fresh input before every invocation, outside of the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"public/HelloWorld.jmm", "public/FindMaximum.jmm", "public/MonteCarloPi.jmm", "public/WhileAndIf.jmm",
+                "synthetic:20x20", "synthetic:1x250"})
+        public String program;
+
+        private String code;
+        private Map<String, String> config;
+
+        @Setup(Level.Trial)
+        public void load() {
+            code = BenchmarkPrograms.load(program);
+            config = BenchmarkPrograms.config(program);
+
+            // Fail before measuring anything if the program does not compile
+            List<Report> reports = CompilationPipeline.compile(code, config, null).getReports();
+            if (CompilationPipeline.hasErrors(reports)) {
+                throw new RuntimeException("Could not compile " + program + ": " + reports);
+            }
+        }
+
+        JmmParserResult parse() {
+            return new Parser().parse(code, config);
+        }
+
+        JmmSemanticsResult analyse() {
+            return new Analyser().semanticAnalysis(parse());
+        }
+
+        JmmSemanticsResult optimizeAst() {
+            return new Optimizer().optimize(analyse());
+        }
+
+        OllirResult toOllir() {
+            return new Optimizer().toOllir(optimizeAst());
+        }
+
+        OllirResult optimizeOllir() {
+            return new Optimizer().optimize(toOllir());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Parsed {
+        JmmParserResult parserResult;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            parserResult = input.parse();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Analysed {
+        JmmSemanticsResult semanticsResult;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            semanticsResult = input.analyse();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AstOptimized {
+        JmmSemanticsResult semanticsResult;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            semanticsResult = input.optimizeAst();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ollir {
+        OllirResult ollirResult;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            ollirResult = input.toOllir();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OllirOptimized {
+        OllirResult ollirResult;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            ollirResult = input.optimizeOllir();
+        }
+    }
+
+    @Benchmark
+    public JmmParserResult parse(Input input) {
+        return input.parse();
+    }
+
+    @Benchmark
+    public JmmSemanticsResult semanticAnalysis(Parsed parsed) {
+        return new Analyser().semanticAnalysis(parsed.parserResult);
+    }
+
+    @Benchmark
+    public JmmSemanticsResult constantPropagation(Analysed analysed) {
+        return new Optimizer().optimize(analysed.semanticsResult);
+    }
+
+    @Benchmark
+    public OllirResult toOllir(AstOptimized astOptimized) {
+        return new Optimizer().toOllir(astOptimized.semanticsResult);
+    }
+
+    /**
+     * All of {@link Optimizer#optimize(OllirResult)}: the passes over the SSA form (conditional constant propagation,
+     * value numbering, loop-invariant code motion, strength reduction and loop unrolling), the incremental elimination
+     * of dead variables and the register allocation. {@code --stats} reports the time of each of these on its own.
+     */
+    @Benchmark
+    public OllirResult dataflow(Ollir ollir) {
+        return new Optimizer().optimize(ollir.ollirResult);
+    }
+
+    @Benchmark
+    public String jasmin(OllirOptimized ollirOptimized) {
+        return new OllirToJasmin(ollirOptimized.ollirResult.getOllirClass()).build();
+    }
+}
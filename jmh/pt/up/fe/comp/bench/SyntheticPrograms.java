@@ -0,0 +1,79 @@
+package pt.up.fe.comp.bench;
+
+/**
+ * Generates valid Java-- programs of any size, to measure how the stages scale past the size of the fixtures.
+ * The same arguments always give the same program.
+ */
+public class SyntheticPrograms {
+
+    private static final int LOCALS = 8;
+
+    /**
+     * @param methods    number of methods of the class, besides main
+     * @param statements number of statements of each method; ifs and whiles count as one
+     */
+    public static String generate(int methods, int statements) {
+        StringBuilder code = new StringBuilder("import io;\n\nclass Synthetic {\n\n");
+
+        for (int method = 0; method < methods; method++) {
+            appendMethod(code, method, statements);
+        }
+
+        code.append("    public static void main(String[] args) {\n")
+                .append("        Synthetic synthetic;\n")
+                .append("        synthetic = new Synthetic();\n");
+        for (int method = 0; method < methods; method++) {
+            code.append("        io.println(synthetic.method").append(method).append("(").append(method)
+                    .append(", 3));\n");
+        }
+        code.append("    }\n}\n");
+
+        return code.toString();
+    }
+
+    private static void appendMethod(StringBuilder code, int method, int statements) {
+        code.append("    public int method").append(method).append("(int a, int b) {\n");
+        for (int local = 0; local < LOCALS; local++) {
+            code.append("        int v").append(local).append(";\n");
+        }
+        code.append("        int i;\n        int[] array;\n        array = new int[").append(LOCALS).append("];\n");
+        for (int local = 0; local < LOCALS; local++) {
+            code.append("        v").append(local).append(" = ").append(local % 2 == 0 ? "a" : "b").append(" + ")
+                    .append(local).append(";\n");
+        }
+
+        for (int statement = 0; statement < statements; statement++) {
+            appendStatement(code, method + statement);
+        }
+
+        code.append("        return v0");
+        for (int local = 1; local < LOCALS; local++) {
+            code.append(" + v").append(local);
+        }
+        code.append(";\n    }\n\n");
+    }
+
+    private static void appendStatement(StringBuilder code, int seed) {
+        String target = "v" + seed % LOCALS;
+        String left = "v" + (seed + 1) % LOCALS;
+        String right = "v" + (seed + 3) % LOCALS;
+
+        switch (seed % 4) {
+            case 0 -> code.append("        ").append(target).append(" = ").append(left).append(" + ").append(right)
+                    .append(" * ").append(seed % 7 + 2).append(";\n");
+            case 1 -> code.append("        if (").append(left).append(" < ").append(right).append(") {\n")
+                    .append("            ").append(target).append(" = ").append(left).append(" - ").append(right)
+                    .append(";\n        } else {\n")
+                    .append("            ").append(target).append(" = ").append(right).append(" / 2;\n")
+                    .append("        }\n");
+            case 2 -> code.append("        i = 0;\n")
+                    .append("        while (i < array.length) {\n")
+                    .append("            array[i] = array[i] + ").append(left).append(";\n")
+                    .append("            i = i + 1;\n")
+                    .append("        }\n")
+                    .append("        ").append(target).append(" = array[").append(seed % LOCALS).append("];\n");
+            default -> code.append("        ").append(target).append(" = ").append(seed % 100).append(" * 4 - ")
+                    .append(left).append(";\n");
+        }
+    }
+}
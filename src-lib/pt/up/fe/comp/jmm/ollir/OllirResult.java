@@ -3,6 +3,7 @@ package pt.up.fe.comp.jmm.ollir;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.specs.comp.ollir.ClassUnit;
 
@@ -17,7 +18,8 @@ import pt.up.fe.specs.util.SpecsCollections;
  */
 public class OllirResult implements ReportsProvider {
 
-    private final String ollirCode;
+    private String ollirCode;
+    private final Supplier<String> ollirCodeSupplier;
     private final ClassUnit ollirClass;
     private final SymbolTable symbolTable;
     private final List<Report> reports;
@@ -27,6 +29,7 @@ public class OllirResult implements ReportsProvider {
             Map<String, String> config) {
 
         this.ollirCode = ollirCode;
+        this.ollirCodeSupplier = null;
         this.ollirClass = ollirClass;
         this.symbolTable = symbolTable;
         this.reports = reports;
@@ -35,6 +38,7 @@ public class OllirResult implements ReportsProvider {
 
     public OllirResult(String ollirCode, Map<String, String> config) {
         this.ollirCode = ollirCode;
+        this.ollirCodeSupplier = null;
         this.ollirClass = OllirUtils.parse(ollirCode);
         this.symbolTable = null;
         this.reports = new ArrayList<>();
@@ -53,7 +57,31 @@ public class OllirResult implements ReportsProvider {
                 SpecsCollections.concat(semanticsResult.getReports(), reports), semanticsResult.getConfig());
     }
 
+    /**
+     * Creates a new instance from the analysis stage results and an already built ClassUnit. The OLLIR code is only
+     * generated, by the given supplier, if it is requested.
+     * 
+     * @param semanticsResult
+     * @param ollirClass
+     * @param ollirCode
+     * @param reports
+     */
+    public OllirResult(JmmSemanticsResult semanticsResult, ClassUnit ollirClass, Supplier<String> ollirCode,
+            List<Report> reports) {
+
+        this.ollirCode = null;
+        this.ollirCodeSupplier = ollirCode;
+        this.ollirClass = ollirClass;
+        this.symbolTable = semanticsResult.getSymbolTable();
+        this.reports = SpecsCollections.concat(semanticsResult.getReports(), reports);
+        this.config = semanticsResult.getConfig();
+    }
+
     public String getOllirCode() {
+        if (ollirCode == null && ollirCodeSupplier != null) {
+            ollirCode = ollirCodeSupplier.get();
+        }
+
         return ollirCode;
     }
 
@@ -0,0 +1,190 @@
+package pt.up.fe.comp;
+
+import pt.up.fe.comp.jasmin.JasminAssembler.AssembledClass;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp.stats.CompilationStats;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchCompiler {
+
+    private final Map<String, String> config;
+    private final File outputDir;
+    private final int threads;
+    private final CompilationStats stats = new CompilationStats();
+
+    public BatchCompiler(Map<String, String> config, File outputDir, int threads) {
+        this.config = config;
+        this.outputDir = outputDir;
+        this.threads = threads;
+    }
+
+    public static boolean isBatchInput(String inputs) {
+        if (inputs.contains(",") || isGlob(inputs)) return true;
+        return new File(inputs).isDirectory();
+    }
+
+    private static boolean isGlob(String path) {
+        return path.contains("*") || path.contains("?") || path.contains("[") || path.contains("{");
+    }
+
+    public static List<File> resolveInputs(String inputs) {
+        Set<File> files = new LinkedHashSet<>();
+
+        for (String input: inputs.split(",")) {
+            if (input.isBlank()) continue;
+
+            File file = new File(input);
+            if (file.isFile()) {
+                files.add(file);
+            } else if (file.isDirectory()) {
+                files.addAll(findFiles(file.toPath(), FileSystems.getDefault().getPathMatcher("glob:**.jmm")));
+            } else if (isGlob(input)) {
+                files.addAll(findFiles(globRoot(input), FileSystems.getDefault().getPathMatcher("glob:" + input)));
+            } else {
+                throw new RuntimeException("Expected a path to an existing input file, directory or glob, got '"
+                        + input + "'.");
+            }
+        }
+
+        if (files.isEmpty()) {
+            throw new RuntimeException("No input files found in '" + inputs + "'.");
+        }
+
+        return new ArrayList<>(files);
+    }
+
+    private static Path globRoot(String glob) {
+        int firstWildcard = 0;
+        while (firstWildcard < glob.length() && "*?[{".indexOf(glob.charAt(firstWildcard)) == -1) {
+            firstWildcard++;
+        }
+        int lastSeparator = glob.lastIndexOf('/', firstWildcard);
+
+        return Path.of(lastSeparator == -1 ? "." : glob.substring(0, lastSeparator + 1));
+    }
+
+    private static List<File> findFiles(Path root, PathMatcher matcher) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(path) || matcher.matches(path.normalize()))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compiles all the given files on a pool of {@code threads} workers, writing each class file to the output
+     * folder once it and the files before it are compiled. If several files declare the same class, only the first
+     * one's class file is written and the others are reported as errors.
+     *
+     * @return the reports of all the compilations, in the same order as the input files
+     */
+    public List<Report> compile(List<File> inputs) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, inputs.size())));
+
+        try {
+            List<Future<CompilationPipeline.Result>> futures = new ArrayList<>();
+            for (File input: inputs) {
+                futures.add(executor.submit(() -> compile(input)));
+            }
+
+            // The classes are written here, in the order of the inputs, so that the same one wins every time
+            Map<String, File> classInputs = new HashMap<>();
+
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    CompilationPipeline.Result result = futures.get(i).get();
+                    reports.addAll(fileReports(inputs.get(i), result.getReports()));
+                    write(result.getAssembledClass(), inputs.get(i), outputDir, classInputs, reports);
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception exception ? exception : e;
+                    reports.add(fileReport(inputs.get(i), Report.newError(Stage.OTHER, -1, -1,
+                            "Exception during compilation", cause)));
+                }
+            }
+
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while compiling", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompilationPipeline.Result compile(File input) {
+        Map<String, String> fileConfig = new HashMap<>(config);
+        fileConfig.put("inputFile", input.getPath());
+
+        CompilationPipeline.Result result = CompilationPipeline.compile(SpecsIo.read(input), fileConfig, null);
+        if (result.getStats() != null) stats.merge(result.getStats());
+
+        return result;
+    }
+
+    /**
+     * Writes the class compiled from the given input file to the output folder, unless an earlier input in
+     * {@code classInputs} already declared it, which is reported as an error along with any failure to write it.
+     */
+    public static void write(AssembledClass assembledClass, File input, File outputDir, Map<String, File> classInputs,
+                             List<Report> reports) {
+        if (assembledClass == null) return;
+
+        File previousInput = classInputs.putIfAbsent(assembledClass.getClassName(), input);
+        if (previousInput != null) {
+            reports.add(fileReport(input, new Report(ReportType.ERROR, Stage.OTHER, -1, -1,
+                    "Class " + assembledClass.getClassName() + " is also declared in " + previousInput.getPath()
+                            + ", so its class file was not written")));
+            return;
+        }
+
+        if (outputDir == null) return;
+        try {
+            assembledClass.write(outputDir);
+        } catch (RuntimeException e) {
+            reports.add(fileReport(input, Report.newError(Stage.OTHER, -1, -1, "Exception during compilation", e)));
+        }
+    }
+
+    /**
+     * @return the stats of all the compiled files added together, empty if the config does not ask for them
+     */
+    public CompilationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the reports with the path of the input file they are about in front of their messages
+     */
+    public static List<Report> fileReports(File input, List<Report> reports) {
+        return reports.stream()
+                .map(report -> fileReport(input, report))
+                .collect(Collectors.toList());
+    }
+
+    private static Report fileReport(File input, Report report) {
+        Report fileReport = new Report(report.getType(), report.getStage(), report.getLine(), report.getColumn(),
+                input.getPath() + ": " + report.getMessage());
+        report.getException().ifPresent(fileReport::setException);
+        return fileReport;
+    }
+}
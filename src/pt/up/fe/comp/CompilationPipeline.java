@@ -0,0 +1,200 @@
+package pt.up.fe.comp;
+
+import pt.up.fe.comp.analysis.Analyser;
+import pt.up.fe.comp.cache.BuildCache;
+import pt.up.fe.comp.cache.CacheEntry;
+import pt.up.fe.comp.jasmin.JasminAssembler;
+import pt.up.fe.comp.jasmin.JasminAssembler.AssembledClass;
+import pt.up.fe.comp.jasmin.MyJasminBackend;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp.ollir.Optimizer;
+import pt.up.fe.comp.parse.Parser;
+import pt.up.fe.comp.stats.CompilationStats;
+import pt.up.fe.comp.stats.PipelineStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a single compilation through all the stages, stopping at the first stage that reports errors.
+ * Safe to call from several threads at once.
+ */
+public class CompilationPipeline {
+
+    // The Jasmin assembler keeps some of its scanner state in static fields, so it is not safe to run concurrently
+    // and classes go through it one at a time while the earlier stages run in parallel
+    private static final Object ASSEMBLER_LOCK = new Object();
+
+    public static class Result {
+        private final List<Report> reports;
+        private final AssembledClass assembledClass;
+        private final File classFile;
+        private CompilationStats stats;
+
+        public Result(List<Report> reports, AssembledClass assembledClass, File classFile) {
+            this.reports = reports;
+            this.assembledClass = assembledClass;
+            this.classFile = classFile;
+        }
+
+        public Result(List<Report> reports) {
+            this(reports, null, null);
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        /**
+         * @return the generated class, or null if the compilation failed
+         */
+        public AssembledClass getAssembledClass() {
+            return assembledClass;
+        }
+
+        /**
+         * @return the written class file, or null if the compilation failed or no output folder was given
+         */
+        public File getClassFile() {
+            return classFile;
+        }
+
+        /**
+         * @return the stats of every stage that was run, or null if the config does not ask for them
+         */
+        public CompilationStats getStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * @param outputDir the folder where the class file is written, or null to only keep it in memory
+     */
+    public static Result compile(String code, Map<String, String> config, File outputDir) {
+        if (!config.containsKey("stats")) {
+            return compileCached(code, config, outputDir);
+        }
+
+        CompilationStats stats = new CompilationStats();
+        stats.start();
+        try {
+            Result result = compileCached(code, config, outputDir);
+            result.stats = stats;
+            return result;
+        } finally {
+            stats.stop();
+        }
+    }
+
+    private static Result compileCached(String code, Map<String, String> config, File outputDir) {
+        try {
+            // Debug mode prints the intermediate results, so it always runs all the stages
+            BuildCache cache = config.getOrDefault("debug", "false").equals("true") ? null : BuildCache.get(config);
+            if (cache == null) {
+                return compile(code, config, outputDir, null, null);
+            }
+
+            String key = cache.key(code, config);
+            CacheEntry entry = cache.lookup(key);
+
+            if (entry.getClassFile() != null) {
+                try {
+                    byte[] bytes = Files.readAllBytes(entry.getClassFile().toPath());
+                    return output(entry.getReports(), new AssembledClass(entry.getClassName(), bytes), outputDir);
+                } catch (IOException e) {
+                    // Evicted in the meantime, compile it again
+                    return compile(code, config, outputDir, cache, key);
+                }
+            }
+            if (entry.getJasminCode() != null) {
+                JasminResult jasminResult = new JasminResult(entry.getClassName(), entry.getJasminCode(),
+                        entry.getReports(), config);
+                return assemble(jasminResult, outputDir, cache, key);
+            }
+            if (entry.getOllirCode() != null) {
+                OllirResult ollirResult = CompilationStats.measure(PipelineStage.OLLIR_PARSE,
+                        () -> new OllirResult(entry.getOllirCode(), config));
+                ollirResult.getReports().addAll(entry.getReports());
+                return compile(ollirResult, outputDir, cache, key);
+            }
+
+            return compile(code, config, outputDir, cache, key);
+        } catch (RuntimeException e) {
+            return new Result(List.of(Report.newError(Stage.OTHER, -1, -1, "Exception during compilation", e)));
+        }
+    }
+
+    private static Result compile(String code, Map<String, String> config, File outputDir, BuildCache cache,
+                                  String key) {
+        // Parse stage
+        JmmParserResult parserResult = CompilationStats.measure(PipelineStage.PARSE,
+                () -> new Parser().parse(code, config));
+        if (hasErrors(parserResult.getReports())) return new Result(parserResult.getReports());
+
+        // Analysis stage
+        JmmSemanticsResult analysisResult = CompilationStats.measure(PipelineStage.SEMANTIC_ANALYSIS,
+                () -> new Analyser().semanticAnalysis(parserResult));
+        if (hasErrors(analysisResult.getReports())) return new Result(analysisResult.getReports());
+
+        // Optimization stage
+        Optimizer optimizer = new Optimizer();
+        JmmSemanticsResult highLevelOptimizationResult = CompilationStats.measure(PipelineStage.AST_OPTIMIZATION,
+                () -> optimizer.optimize(analysisResult));
+        if (hasErrors(highLevelOptimizationResult.getReports()))
+            return new Result(highLevelOptimizationResult.getReports());
+        OllirResult ollirResult = CompilationStats.measure(PipelineStage.OLLIR_GENERATION,
+                () -> optimizer.toOllir(highLevelOptimizationResult));
+        if (hasErrors(ollirResult.getReports())) return new Result(ollirResult.getReports());
+
+        if (cache != null) cache.putOllir(key, ollirResult.getOllirCode(), ollirResult.getReports());
+
+        return compile(ollirResult, outputDir, cache, key);
+    }
+
+    private static Result compile(OllirResult ollirResult, File outputDir, BuildCache cache, String key) {
+        OllirResult lowLevelOptimizationResult = new Optimizer().optimize(ollirResult);
+        if (hasErrors(lowLevelOptimizationResult.getReports()))
+            return new Result(lowLevelOptimizationResult.getReports());
+
+        // Backend stage
+        JasminResult jasminResult = CompilationStats.measure(PipelineStage.JASMIN_GENERATION,
+                () -> new MyJasminBackend().toJasmin(lowLevelOptimizationResult));
+        if (hasErrors(jasminResult.getReports())) return new Result(jasminResult.getReports());
+
+        if (cache != null) cache.putJasmin(key, jasminResult.getClassName(), jasminResult.getJasminCode(),
+                jasminResult.getReports());
+
+        return assemble(jasminResult, outputDir, cache, key);
+    }
+
+    private static Result assemble(JasminResult jasminResult, File outputDir, BuildCache cache, String key) {
+        // Produce output
+        AssembledClass assembledClass;
+        synchronized (ASSEMBLER_LOCK) {
+            assembledClass = CompilationStats.measure(PipelineStage.ASSEMBLY, () -> JasminAssembler.assemble(
+                    jasminResult.getJasminCode(), jasminResult.getClassName() + ".j"));
+        }
+
+        if (cache != null) cache.putClass(key, assembledClass.getClassName(), assembledClass.getBytes());
+
+        return output(jasminResult.getReports(), assembledClass, outputDir);
+    }
+
+    private static Result output(List<Report> reports, AssembledClass assembledClass, File outputDir) {
+        File classFile = outputDir == null ? null : assembledClass.write(outputDir);
+        return new Result(reports, assembledClass, classFile);
+    }
+
+    public static boolean hasErrors(List<Report> reports) {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+}
@@ -1,32 +1,32 @@
 package pt.up.fe.comp;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
 
-import pt.up.fe.comp.jasmin.MyJasminBackend;
-import pt.up.fe.comp.analysis.Analyser;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.cache.BuildCache;
+import pt.up.fe.comp.daemon.CompileDaemon;
+import pt.up.fe.comp.daemon.DaemonProtocol;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.ReportType;
-import pt.up.fe.comp.ollir.Optimizer;
-import pt.up.fe.comp.parse.Parser;
+import pt.up.fe.comp.stats.CompilationStats;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
 import pt.up.fe.specs.util.SpecsSystem;
 
 public class Launcher {
 
-    private static Map<String, String> parseCommandArgs(String[] args) {
+    public static Map<String, String> parseCommandArgs(String[] args) {
         // Create config
         Map<String, String> config = new HashMap<>();
         config.put("inputFile", "");
         config.put("optimize", "false");
         config.put("registerAllocation", "-1");
         config.put("debug", "false");
+        config.put("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
 
         // Parse command args
         for (String arg: args) {
@@ -50,9 +50,41 @@ public class Launcher {
                     }
                     config.put("registerAllocation", split[1]);
                 }
+                case "--allocator" -> {
+                    if (split.length != 2 || !(split[1].equals("graph") || split[1].equals("linear"))) {
+                        throw new RuntimeException("--allocator requires an argument (graph or linear)");
+                    }
+                    config.put("registerAllocator", split[1]);
+                }
+                case "--unroll" -> {
+                    if (split.length != 2) {
+                        throw new RuntimeException("--unroll requires an argument (integer >= 1)");
+                    }
+                    try {
+                        if (Integer.parseInt(split[1]) < 1) {
+                            throw new RuntimeException("--unroll requires an integer >= 1");
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeException("--unroll requires an integer >= 1");
+                    }
+                    config.put("unrollFactor", split[1]);
+                }
+                case "--unroll-budget" -> {
+                    if (split.length != 2) {
+                        throw new RuntimeException("--unroll-budget requires an argument (integer >= 0)");
+                    }
+                    try {
+                        if (Integer.parseInt(split[1]) < 0) {
+                            throw new RuntimeException("--unroll-budget requires an integer >= 0");
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeException("--unroll-budget requires an integer >= 0");
+                    }
+                    config.put("unrollBudget", split[1]);
+                }
                 case "-i" -> {
                     if (split.length != 2) {
-                        throw new RuntimeException("-i requires an argument (input file)");
+                        throw new RuntimeException("-i requires an argument (input file, directory or glob)");
                     }
                     config.put("inputFile", split[1]);
                 }
@@ -68,6 +100,51 @@ public class Launcher {
                     }
                     config.put("debug", "true");
                 }
+                case "-j" -> {
+                    if (split.length != 2) {
+                        throw new RuntimeException("-j requires an argument (integer >= 1)");
+                    }
+                    try {
+                        if (Integer.parseInt(split[1]) < 1) {
+                            throw new RuntimeException("-j requires an integer >= 1");
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeException("-j requires an integer >= 1");
+                    }
+                    config.put("threads", split[1]);
+                }
+                case "--cache" -> {
+                    if (split.length > 2) {
+                        throw new RuntimeException("--cache takes at most one argument (cache folder)");
+                    }
+                    config.put("cacheDir", split.length == 2 ? split[1] : ".jmm-cache");
+                }
+                case "--cache-size" -> {
+                    if (split.length != 2) {
+                        throw new RuntimeException("--cache-size requires an argument (size in MB)");
+                    }
+                    try {
+                        if (Long.parseLong(split[1]) < 0) {
+                            throw new RuntimeException("--cache-size requires an integer >= 0");
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeException("--cache-size requires an integer >= 0");
+                    }
+                    config.put("cacheSize", split[1]);
+                }
+                case "--stats" -> {
+                    String format = split.length == 2 ? split[1] : "table";
+                    if (split.length > 2 || !(format.equals("table") || format.equals("json"))) {
+                        throw new RuntimeException("--stats takes at most one argument (table or json)");
+                    }
+                    config.put("stats", format);
+                }
+                case "--daemon" -> {
+                    if (split.length > 2) {
+                        throw new RuntimeException("--daemon takes at most one argument (socket file)");
+                    }
+                    config.put("daemon", split.length == 2 ? split[1] : DaemonProtocol.getSocket().toString());
+                }
                 default -> throw new RuntimeException("Unknown argument: " + arg);
             }
         }
@@ -87,19 +164,14 @@ public class Launcher {
         return SpecsIo.read(inputFile);
     }
 
-    private static void checkErrors(List<Report> reports) {
+    public static void checkErrors(List<Report> reports) {
+        reports.stream()
+                .filter(report -> report.getType() == ReportType.WARNING)
+                .forEach(report -> System.out.println(formatReport(report)));
+
         Optional<String> errors = reports.stream()
                 .filter(report -> report.getType() == ReportType.ERROR)
-                .map(report -> {
-                    String message = report.getType() + "@" + report.getStage();
-                    if (report.getLine() != -1) message += ", line " + report.getLine();
-                    if (report.getColumn() != -1) message += ", col " + report.getColumn();
-                    message += ": " + report.getMessage();
-                    if (report.getException().isPresent()) {
-                        message += "\n" + report.getException().get().getMessage();
-                    }
-                    return message;
-                })
+                .map(Launcher::formatReport)
                 .reduce((a, b) -> a + "\n" + b);
 
         if (errors.isPresent()) {
@@ -108,6 +180,17 @@ public class Launcher {
         }
     }
 
+    private static String formatReport(Report report) {
+        String message = report.getType() + "@" + report.getStage();
+        if (report.getLine() != -1) message += ", line " + report.getLine();
+        if (report.getColumn() != -1) message += ", col " + report.getColumn();
+        message += ": " + report.getMessage();
+        if (report.getException().isPresent()) {
+            message += "\n" + report.getException().get().getMessage();
+        }
+        return message;
+    }
+
     public static void main(String[] args) {
         SpecsSystem.programStandardInit();
         SpecsLogs.info("Executing with args: " + Arrays.toString(args));
@@ -116,31 +199,69 @@ public class Launcher {
         if (config.getOrDefault("debug", "false").equals("true")) {
             System.out.println("Debug mode enabled\n\n");
         }
+
+        if (config.containsKey("daemon")) {
+            startDaemon(config);
+            return;
+        }
+
+        if (BatchCompiler.isBatchInput(config.get("inputFile"))) {
+            compileBatch(config);
+            return;
+        }
+
         String input = readFile(config.get("inputFile"));
 
-        // Parse stage
-        JmmParserResult parserResult = new Parser().parse(input, config);
-        checkErrors(parserResult.getReports());
-
-        // Analysis stage
-        JmmSemanticsResult analysisResult = new Analyser().semanticAnalysis(parserResult);
-        checkErrors(analysisResult.getReports());
-
-        // Optimization stage
-        Optimizer optimizer = new Optimizer();
-        JmmSemanticsResult highLevelOptimizationResult = optimizer.optimize(analysisResult);
-        checkErrors(highLevelOptimizationResult.getReports());
-        OllirResult ollirResult = optimizer.toOllir(highLevelOptimizationResult);
-        checkErrors(ollirResult.getReports());
-        OllirResult lowLevelOptimizationResult = optimizer.optimize(ollirResult);
-        checkErrors(lowLevelOptimizationResult.getReports());
-
-        // Backend stage
-        JasminResult jasminResult = new MyJasminBackend().toJasmin(lowLevelOptimizationResult);
-        checkErrors(jasminResult.getReports());
-
-        // Produce output
-        SpecsIo.copy(jasminResult.compile(), new File(jasminResult.getClassName() + ".class"));
+        CompilationPipeline.Result result = CompilationPipeline.compile(input, config, new File("."));
+        printStats(config, result.getStats());
+        checkErrors(result.getReports());
+    }
+
+    private static void printStats(Map<String, String> config, CompilationStats stats) {
+        if (stats == null) return;
+
+        if (config.get("stats").equals("json")) {
+            System.out.println(stats.toJson());
+        } else {
+            System.out.println(stats.toTable());
+        }
+    }
+
+    private static void startDaemon(Map<String, String> config) {
+        Path socket = Path.of(config.get("daemon"));
+        int threads = Integer.parseInt(config.get("threads"));
+
+        try {
+            Map<String, String> daemonConfig = new HashMap<>();
+            for (String key: List.of("cacheDir", "cacheSize")) {
+                if (config.containsKey(key)) daemonConfig.put(key, config.get(key));
+            }
+
+            new CompileDaemon(socket, threads, daemonConfig).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the compile daemon on " + socket, e);
+        }
+    }
+
+    private static void compileBatch(Map<String, String> config) {
+        List<File> inputs = BatchCompiler.resolveInputs(config.get("inputFile"));
+        int threads = Integer.parseInt(config.get("threads"));
+
+        BatchCompiler batchCompiler = new BatchCompiler(config, new File("."), threads);
+        List<Report> reports = batchCompiler.compile(inputs);
+
+        if (config.containsKey("stats")) {
+            printStats(config, batchCompiler.getStats());
+        }
+
+        BuildCache cache = BuildCache.get(config);
+        if (cache != null) {
+            System.out.println(cache);
+        }
+
+        checkErrors(reports);
+
+        System.out.println("Compiled " + inputs.size() + " files");
     }
 
 }
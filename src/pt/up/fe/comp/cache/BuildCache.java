@@ -0,0 +1,294 @@
+package pt.up.fe.comp.cache;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the outputs of a compilation, keyed by a hash of the source code, of the config entries that
+ * change the generated code and of the compiler build.
+ *
+ * <p>
+ * Each key has its own folder with the OLLIR code, the Jasmin code and the class file, whichever of them were
+ * produced, along with the warnings reported up to them. The least recently used entries are evicted once the cache
+ * grows over its size limit.
+ */
+public class BuildCache {
+    public static final long DEFAULT_MAX_SIZE_MB = 64;
+
+    private static final List<String> KEY_CONFIG = List.of("optimize", "registerAllocation", "registerAllocator",
+            "unrollFactor", "unrollBudget");
+    private static final String OLLIR_FILE = "code.ollir";
+    private static final String OLLIR_REPORTS_FILE = "ollir.reports";
+    private static final String REPORTS_FILE = "jasmin.reports";
+
+    private static final Map<File, BuildCache> caches = new ConcurrentHashMap<>();
+
+    private final File folder;
+    private final long maxSize;
+    private final String compilerVersion;
+
+    private final AtomicInteger classHits = new AtomicInteger();
+    private final AtomicInteger jasminHits = new AtomicInteger();
+    private final AtomicInteger ollirHits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private BuildCache(File folder, long maxSize) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+        this.compilerVersion = getCompilerVersion();
+    }
+
+    /**
+     * @return the cache configured by the "cacheDir" and "cacheSize" (in MB) entries of the config, or null if the
+     * cache is disabled
+     */
+    public static BuildCache get(Map<String, String> config) {
+        String cacheDir = config.get("cacheDir");
+        if (cacheDir == null || cacheDir.isEmpty()) return null;
+
+        long maxSizeMb = Long.parseLong(config.getOrDefault("cacheSize", String.valueOf(DEFAULT_MAX_SIZE_MB)));
+        File folder = new File(cacheDir).getAbsoluteFile();
+
+        return caches.computeIfAbsent(folder, f -> new BuildCache(f, maxSizeMb * 1024 * 1024));
+    }
+
+    // The cache must not survive a rebuild of the compiler, so a hash of its classes (or of its jar) is part of the
+    // key. Not their timestamps, since a classes folder keeps its own when the files in it are rebuilt.
+    private static String getCompilerVersion() {
+        try {
+            Path codeSource = Path.of(BuildCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(codeSource)) {
+                files = paths.filter(Files::isRegularFile).sorted().toList();
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path file: files) {
+                digest.update(codeSource.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(file));
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        } catch (URISyntaxException | IOException | SecurityException | NullPointerException e) {
+            return "unknown";
+        }
+    }
+
+    public String key(String code, Map<String, String> config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+            for (String entry: KEY_CONFIG) {
+                digest.update((byte) 0);
+                digest.update(config.getOrDefault(entry, "").getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b: bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Looks up the furthest stage output cached for the given key, and counts it as a hit of that stage (or as a
+     * miss, if nothing is cached).
+     */
+    public CacheEntry lookup(String key) {
+        File entryFolder = new File(folder, key);
+        File[] files = entryFolder.listFiles();
+
+        if (files != null) {
+            File classFile = findFile(files, ".class");
+            File jasminFile = findFile(files, ".j");
+            File ollirFile = new File(entryFolder, OLLIR_FILE);
+
+            // The reports of the Jasmin code are also those of the class file, as assembling it reports nothing
+            List<Report> reports = readReports(new File(entryFolder, REPORTS_FILE));
+            List<Report> ollirReports;
+
+            CacheEntry entry = null;
+            String code;
+            if (classFile != null && reports != null) {
+                entry = new CacheEntry(SpecsIo.removeExtension(classFile.getName()), classFile, null, null, reports);
+                classHits.incrementAndGet();
+            } else if (jasminFile != null && reports != null && (code = read(jasminFile)) != null) {
+                entry = new CacheEntry(SpecsIo.removeExtension(jasminFile.getName()), null, code, null, reports);
+                jasminHits.incrementAndGet();
+            } else if ((ollirReports = readReports(new File(entryFolder, OLLIR_REPORTS_FILE))) != null
+                    && (code = read(ollirFile)) != null) {
+                entry = new CacheEntry(null, null, null, code, ollirReports);
+                ollirHits.incrementAndGet();
+            }
+
+            if (entry != null) {
+                entryFolder.setLastModified(System.currentTimeMillis());
+                return entry;
+            }
+        }
+
+        misses.incrementAndGet();
+        return CacheEntry.EMPTY;
+    }
+
+    private static File findFile(File[] files, String extension) {
+        for (File file: files) {
+            if (file.getName().endsWith(extension)) return file;
+        }
+        return null;
+    }
+
+    private static String read(File file) {
+        try {
+            return Files.readString(file.toPath());
+        } catch (IOException e) {
+            // Entry being evicted by another compilation, treat it as missing
+            return null;
+        }
+    }
+
+    private static List<Report> readReports(File file) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            int size = in.readInt();
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                reports.add(new Report(ReportType.valueOf(in.readUTF()), Stage.valueOf(in.readUTF()),
+                        in.readInt(), in.readInt(), new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8)));
+            }
+            return reports;
+        } catch (IOException | IllegalArgumentException e) {
+            // Missing, being evicted or truncated, treat the stages that need it as missing
+            return null;
+        }
+    }
+
+    // Only the errors are left out, as a compilation with errors is never cached
+    private static byte[] toBytes(List<Report> reports) {
+        List<Report> warnings = reports.stream().filter(report -> report.getType() != ReportType.ERROR).toList();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(warnings.size());
+            for (Report report: warnings) {
+                out.writeUTF(report.getType().name());
+                out.writeUTF(report.getStage().name());
+                out.writeInt(report.getLine());
+                out.writeInt(report.getColumn());
+                byte[] message = report.getMessage().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(message.length);
+                out.write(message);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not serialize the reports", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public void putOllir(String key, String ollirCode, List<Report> reports) {
+        // The reports are written before the code, so that a lookup that finds the code also finds them
+        write(key, OLLIR_REPORTS_FILE, toBytes(reports));
+        write(key, OLLIR_FILE, ollirCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void putJasmin(String key, String className, String jasminCode, List<Report> reports) {
+        write(key, REPORTS_FILE, toBytes(reports));
+        write(key, className + ".j", jasminCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void putClass(String key, String className, byte[] classBytes) {
+        write(key, className + ".class", classBytes);
+        evict();
+    }
+
+    private void write(String key, String name, byte[] contents) {
+        try {
+            Path entryFolder = Files.createDirectories(new File(folder, key).toPath());
+
+            // Write to a temporary file first, so that concurrent lookups never see a partial file
+            Path tempFile = Files.createTempFile(entryFolder, name, ".tmp");
+            Files.write(tempFile, contents);
+            Files.move(tempFile, entryFolder.resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Not caching a result is never an error
+        }
+    }
+
+    private synchronized void evict() {
+        File[] entries = folder.listFiles(File::isDirectory);
+        if (entries == null) return;
+
+        Map<File, Long> sizes = new HashMap<>();
+        Map<File, Long> lastUses = new HashMap<>();
+        long totalSize = 0;
+        for (File entry: entries) {
+            lastUses.put(entry, entry.lastModified());
+            long size = 0;
+            File[] files = entry.listFiles();
+            if (files != null) {
+                for (File file: files) size += file.length();
+            }
+            sizes.put(entry, size);
+            totalSize += size;
+        }
+
+        // Least recently used first
+        Arrays.sort(entries, Comparator.comparingLong(lastUses::get));
+
+        for (File entry: entries) {
+            if (totalSize <= maxSize) break;
+            SpecsIo.deleteFolder(entry);
+            totalSize -= sizes.get(entry);
+        }
+    }
+
+    public int getHits() {
+        return classHits.get() + jasminHits.get() + ollirHits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        int lookups = getHits() + getMisses();
+        return lookups == 0 ? 0 : (double) getHits() / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Cache: %d hits (%d class, %d jasmin, %d ollir), %d misses, %.1f%% hit ratio",
+                getHits(), classHits.get(), jasminHits.get(), ollirHits.get(), getMisses(), getHitRatio() * 100);
+    }
+}
@@ -0,0 +1,47 @@
+package pt.up.fe.comp.cache;
+
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.io.File;
+import java.util.List;
+
+public class CacheEntry {
+    public static final CacheEntry EMPTY = new CacheEntry(null, null, null, null, List.of());
+
+    private final String className;
+    private final File classFile;
+    private final String jasminCode;
+    private final String ollirCode;
+    private final List<Report> reports;
+
+    public CacheEntry(String className, File classFile, String jasminCode, String ollirCode, List<Report> reports) {
+        this.className = className;
+        this.classFile = classFile;
+        this.jasminCode = jasminCode;
+        this.ollirCode = ollirCode;
+        this.reports = reports;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public File getClassFile() {
+        return classFile;
+    }
+
+    public String getJasminCode() {
+        return jasminCode;
+    }
+
+    public String getOllirCode() {
+        return ollirCode;
+    }
+
+    /**
+     * @return the warnings and other non-error reports of the compilation, up to the cached stage
+     */
+    public List<Report> getReports() {
+        return reports;
+    }
+}
@@ -0,0 +1,107 @@
+package pt.up.fe.comp.daemon;
+
+import pt.up.fe.comp.BatchCompiler;
+import pt.up.fe.comp.Launcher;
+import pt.up.fe.comp.daemon.DaemonProtocol.Source;
+import pt.up.fe.comp.jasmin.JasminAssembler.AssembledClass;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thin client for the {@link CompileDaemon}. Takes the same arguments as the {@link Launcher}, sends all the input
+ * files in one request and writes the class files sent back by the daemon to the current folder.
+ *
+ * <p>
+ * Exits with {@link #FALLBACK_STATUS} when the daemon is not running or cannot handle the request (e.g. -d, whose
+ * output is printed on the daemon side, or --stats), so that callers can fall back to the {@link Launcher}.
+ */
+public class CompileClient {
+
+    public static final int FALLBACK_STATUS = 3;
+
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("--stop")) {
+            stop();
+            return;
+        }
+
+        Map<String, String> config = Launcher.parseCommandArgs(args);
+        if (config.containsKey("daemon") || config.containsKey("stats") || config.get("debug").equals("true")) {
+            System.exit(FALLBACK_STATUS);
+        }
+
+        boolean batch = BatchCompiler.isBatchInput(config.get("inputFile"));
+        List<File> inputs = BatchCompiler.resolveInputs(config.get("inputFile"));
+        List<Source> sources = new ArrayList<>();
+        for (File input: inputs) {
+            sources.add(new Source(input.getPath(), SpecsIo.read(input)));
+        }
+
+        SocketChannel channel = connect();
+        if (channel == null) {
+            System.exit(FALLBACK_STATUS);
+        }
+
+        List<Report> reports = new ArrayList<>();
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            DaemonProtocol.writeRequest(out, config, sources);
+
+            // Written like the Launcher does, in the order of the inputs and to their package folders
+            Map<String, File> classInputs = new HashMap<>();
+            for (File input: inputs) {
+                List<Report> fileReports = DaemonProtocol.readReports(in);
+                AssembledClass assembledClass = DaemonProtocol.readClass(in);
+
+                reports.addAll(batch ? BatchCompiler.fileReports(input, fileReports) : fileReports);
+                BatchCompiler.write(assembledClass, input, new File("."), classInputs, reports);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Communication with the compile daemon failed", e);
+        }
+
+        Launcher.checkErrors(reports);
+
+        if (batch) {
+            System.out.println("Compiled " + inputs.size() + " files");
+        }
+    }
+
+    private static void stop() {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            System.out.println("Compile daemon is not running");
+            return;
+        }
+
+        try (channel;
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeUTF(DaemonProtocol.SHUTDOWN);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Communication with the compile daemon failed", e);
+        }
+    }
+
+    /**
+     * @return the connection to the daemon, or null if it is not running
+     */
+    private static SocketChannel connect() {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(DaemonProtocol.getSocket()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
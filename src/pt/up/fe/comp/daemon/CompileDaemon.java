@@ -0,0 +1,179 @@
+package pt.up.fe.comp.daemon;
+
+import pt.up.fe.comp.CompilationPipeline;
+import pt.up.fe.comp.cache.BuildCache;
+import pt.up.fe.comp.daemon.DaemonProtocol.Source;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.*;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Long-lived compile server that keeps the compiler loaded in a warm JVM. Listens on a Unix domain socket that only
+ * its owner can connect to, and runs the files of every {@link DaemonProtocol#COMPILE} request through the
+ * {@link CompilationPipeline} on a pool of workers.
+ */
+public class CompileDaemon {
+
+    // The options that change the generated code, the only ones taken from a request (e.g. not the cache folder)
+    private static final List<String> REQUEST_CONFIG = List.of("optimize", "registerAllocation", "registerAllocator",
+            "unrollFactor", "unrollBudget");
+
+    private final Path socket;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final ExecutorService workers;
+    private final Map<String, String> defaultConfig;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * @param defaultConfig config entries applied to every request (e.g. the build cache)
+     */
+    public CompileDaemon(Path socket, int threads, Map<String, String> defaultConfig) {
+        this.socket = socket.toAbsolutePath();
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.defaultConfig = defaultConfig;
+    }
+
+    public void run() throws IOException {
+        createPrivateFolder(socket.getParent());
+        removeStaleSocket();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            serverChannel = server;
+            setPermissions(socket, "rw-------");
+            System.out.println("Compile daemon listening on " + socket);
+
+            while (server.isOpen()) {
+                SocketChannel channel = server.accept();
+                connections.submit(() -> handle(channel));
+            }
+        } catch (ClosedChannelException e) {
+            // Server socket closed by a shutdown request
+        } finally {
+            connections.shutdown();
+            workers.shutdown();
+            Files.deleteIfExists(socket);
+
+            BuildCache cache = BuildCache.get(defaultConfig);
+            if (cache != null) {
+                System.out.println(cache);
+            }
+        }
+    }
+
+    // Other users could replace the socket in a folder they can write to, so it must belong to the daemon's user
+    private static void createPrivateFolder(Path folder) throws IOException {
+        if (!folder.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(folder);
+            return;
+        }
+
+        if (Files.notExists(folder)) {
+            Files.createDirectories(folder,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        }
+
+        UserPrincipal user = folder.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(folder).equals(user)) {
+            throw new IOException("The folder of the daemon socket, " + folder + ", belongs to another user");
+        }
+        setPermissions(folder, "rwx------");
+    }
+
+    private static void setPermissions(Path path, String permissions) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        }
+    }
+
+    // A daemon that was killed leaves its socket file behind
+    private void removeStaleSocket() throws IOException {
+        if (Files.notExists(socket)) return;
+
+        try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            throw new IOException("A compile daemon is already listening on " + socket);
+        } catch (SocketException e) {
+            Files.delete(socket);
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            while (true) {
+                String command;
+                try {
+                    command = in.readUTF();
+                } catch (EOFException e) {
+                    return;
+                }
+
+                switch (command) {
+                    case DaemonProtocol.COMPILE -> compile(in, out);
+                    case DaemonProtocol.SHUTDOWN -> {
+                        serverChannel.close();
+                        return;
+                    }
+                    default -> throw new IOException("Unknown daemon command: " + command);
+                }
+            }
+        } catch (IOException e) {
+            SpecsLogs.info("Compile daemon connection failed: " + e.getMessage());
+        }
+    }
+
+    private void compile(DataInputStream in, DataOutputStream out) throws IOException {
+        Map<String, String> requestConfig = DaemonProtocol.readConfig(in);
+        Map<String, String> config = new HashMap<>(defaultConfig);
+        for (String key: REQUEST_CONFIG) {
+            if (requestConfig.containsKey(key)) config.put(key, requestConfig.get(key));
+        }
+
+        List<Future<CompilationPipeline.Result>> futures = new ArrayList<>();
+        for (Source source: DaemonProtocol.readSources(in)) {
+            Map<String, String> fileConfig = new HashMap<>(config);
+            fileConfig.put("inputFile", source.name());
+            // The class only exists in memory on this side, the client writes it
+            futures.add(workers.submit(() -> CompilationPipeline.compile(source.code(), fileConfig, null)));
+        }
+
+        // Sent back in the order of the request, each one as soon as it and the ones before it are compiled
+        for (Future<CompilationPipeline.Result> future: futures) {
+            try {
+                CompilationPipeline.Result result = future.get();
+                DaemonProtocol.writeResponse(out, result.getReports(), result.getAssembledClass());
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception exception ? exception : e;
+                DaemonProtocol.writeResponse(out,
+                        List.of(Report.newError(Stage.OTHER, -1, -1, "Exception during compilation", cause)), null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compiling");
+            }
+        }
+    }
+}
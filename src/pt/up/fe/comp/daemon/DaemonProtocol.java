@@ -0,0 +1,140 @@
+package pt.up.fe.comp.daemon;
+
+import pt.up.fe.comp.jasmin.JasminAssembler.AssembledClass;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format shared by {@link CompileDaemon} and {@link CompileClient}, which talk over a Unix domain socket.
+ *
+ * <p>
+ * A request is a command name followed, for {@code COMPILE}, by the config map and the name and source code of every
+ * file of the batch. The response holds, for each file in the same order, the reports of its compilation and, if it
+ * succeeded, the name and bytes of the generated class.
+ */
+public class DaemonProtocol {
+    public static final String SOCKET_ENV = "JMM_DAEMON_SOCKET";
+
+    public static final String COMPILE = "COMPILE";
+    public static final String SHUTDOWN = "SHUTDOWN";
+
+    public record Source(String name, String code) {
+    }
+
+    /**
+     * @return the socket set in {@value #SOCKET_ENV}, or ~/.jmm-daemon/daemon.sock
+     */
+    public static Path getSocket() {
+        String socket = System.getenv(SOCKET_ENV);
+        return socket == null
+                ? Path.of(System.getProperty("user.home"), ".jmm-daemon", "daemon.sock")
+                : Path.of(socket);
+    }
+
+    public static void writeRequest(DataOutputStream out, Map<String, String> config, List<Source> sources)
+            throws IOException {
+        out.writeUTF(COMPILE);
+        out.writeInt(config.size());
+        for (Map.Entry<String, String> entry: config.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeInt(sources.size());
+        for (Source source: sources) {
+            writeString(out, source.name());
+            writeString(out, source.code());
+        }
+        out.flush();
+    }
+
+    public static Map<String, String> readConfig(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> config = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            config.put(in.readUTF(), in.readUTF());
+        }
+        return config;
+    }
+
+    public static List<Source> readSources(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            sources.add(new Source(readString(in), readString(in)));
+        }
+        return sources;
+    }
+
+    public static void writeResponse(DataOutputStream out, List<Report> reports, AssembledClass assembledClass)
+            throws IOException {
+        out.writeInt(reports.size());
+        for (Report report: reports) {
+            out.writeUTF(report.getType().name());
+            out.writeUTF(report.getStage().name());
+            out.writeInt(report.getLine());
+            out.writeInt(report.getColumn());
+            writeString(out, report.getMessage());
+            writeString(out, report.getException().map(Exception::getMessage).orElse(""));
+        }
+        out.writeUTF(assembledClass == null ? "" : assembledClass.getClassName());
+        writeBytes(out, assembledClass == null ? new byte[0] : assembledClass.getBytes());
+        out.flush();
+    }
+
+    public static List<Report> readReports(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Report> reports = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Report report = new Report(ReportType.valueOf(in.readUTF()), Stage.valueOf(in.readUTF()),
+                    in.readInt(), in.readInt(), readString(in));
+            String exceptionMessage = readString(in);
+            if (!exceptionMessage.isEmpty()) {
+                report.setException(new RuntimeException(exceptionMessage));
+            }
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    /**
+     * Reads the class that follows the reports of a response.
+     *
+     * @return the class, or null if the compilation failed
+     */
+    public static AssembledClass readClass(DataInputStream in) throws IOException {
+        String className = in.readUTF();
+        byte[] bytes = readBytes(in);
+        return className.isEmpty() ? null : new AssembledClass(className, bytes);
+    }
+
+    // Unlike writeUTF, not limited to 64KB (sources and exception messages can be larger)
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -8,10 +8,12 @@ import java.util.ArrayList;
 public class InstructionBuilder {
     private final Method method;
     private final LabelTracker labelTracker;
+    private final JasminInstruction jasmin;
 
-    public InstructionBuilder(Method method, LabelTracker labelTracker){
-        this.method = method;
-        this.labelTracker = labelTracker;
+    public InstructionBuilder(MethodContext context){
+        this.method = context.getMethod();
+        this.labelTracker = context.getLabelTracker();
+        this.jasmin = context.getJasminInstruction();
     }
 
     public String build(Instruction instruction) {
@@ -45,15 +47,15 @@ public class InstructionBuilder {
         int arrayRegister = registerNum(element);
         Element indexOperand = ((ArrayOperand) element).getIndexOperands().get(0);
         int indexRegister = registerNum(indexOperand);
-        return JasminInstruction.aload(arrayRegister) + JasminInstruction.iload(indexRegister);
+        return jasmin.aload(arrayRegister) + jasmin.iload(indexRegister);
     }
 
     private String loadArray(Element element) {
-        return getArray(element) + JasminInstruction.iaload();
+        return getArray(element) + jasmin.iaload();
     }
 
     private String storeArray(Element element, String rhs) {
-        return getArray(element) + rhs + JasminInstruction.iastore();
+        return getArray(element) + rhs + jasmin.iastore();
     }
 
     private String loadParameters(ArrayList<Element> parameters) {
@@ -83,7 +85,7 @@ public class InstructionBuilder {
 
         // instruction of the iconst family
         if (element.isLiteral()) {
-            return JasminInstruction.iconst(((LiteralElement) element).getLiteral());
+            return jasmin.iconst(((LiteralElement) element).getLiteral());
         }
 
         // instruction of the iload family
@@ -93,13 +95,13 @@ public class InstructionBuilder {
             if (variableType == ElementType.ARRAYREF) {
                 return loadArray(element);
             }
-            return JasminInstruction.iload(register);
+            return jasmin.iload(register);
         }
 
         // instruction of the aload family
         if (type == ElementType.OBJECTREF || type == ElementType.ARRAYREF || type == ElementType.THIS) {
             int register = registerNum(element);
-            return JasminInstruction.aload(register);
+            return jasmin.aload(register);
         }
 
         throw new NotImplementedException(type);
@@ -113,16 +115,16 @@ public class InstructionBuilder {
             if (variableType == ElementType.ARRAYREF) {
                 return storeArray(lhs, rhs);
             }
-            return rhs + JasminInstruction.istore(registerNum(lhs));
+            return rhs + jasmin.istore(registerNum(lhs));
         } else if (type == ElementType.OBJECTREF || type == ElementType.THIS || type == ElementType.ARRAYREF) {
-            return rhs + JasminInstruction.astore(registerNum(lhs));
+            return rhs + jasmin.astore(registerNum(lhs));
         }
 
         return "";
     }
 
     private String arraylength(CallInstruction instruction) {
-        return load(instruction.getFirstArg()) + JasminInstruction.arraylength();
+        return load(instruction.getFirstArg()) + jasmin.arraylength();
     }
 
     private String newCall(CallInstruction instruction) {
@@ -133,13 +135,13 @@ public class InstructionBuilder {
             code.append(newObject(returnType));
         } else {
             code.append(load(instruction.getListOfOperands().get(0)));
-            code.append(JasminInstruction.newarray());
+            code.append(jasmin.newarray());
         }
         return code.toString();
     }
 
     private String newObject(String className) {
-        return JasminInstruction.new_(getFullyQualifiedName(className)) + JasminInstruction.dup();
+        return jasmin.new_(getFullyQualifiedName(className)) + jasmin.dup();
     }
 
     private String invoke(CallInstruction instruction) {
@@ -162,7 +164,7 @@ public class InstructionBuilder {
         String methodName = ((LiteralElement) instruction.getSecondArg()).getLiteral().replace("\"", "");
         Type returnType = instruction.getReturnType();
 
-        code.append(JasminInstruction.invoke(callType, className, methodName, argumentTypes(parameters), parameters.size(), getJasminType(returnType)));
+        code.append(jasmin.invoke(callType, className, methodName, argumentTypes(parameters), parameters.size(), getJasminType(returnType)));
 
         return code.toString();
     }
@@ -173,7 +175,7 @@ public class InstructionBuilder {
         String className = getFullyQualifiedName(((ClassType) classElement.getType()).getName());
         String fieldName = ((Operand) fieldElement).getName();
         String fieldType = getJasminType(fieldElement.getType());
-        return JasminInstruction.field(fieldOp, className, fieldName, fieldType);
+        return jasmin.field(fieldOp, className, fieldName, fieldType);
     }
 
     private String build(CallInstruction instruction) {
@@ -208,25 +210,35 @@ public class InstructionBuilder {
 
         if (rhs.getInstType() == InstructionType.BINARYOPER) {
             BinaryOpInstruction expression = (BinaryOpInstruction) rhs;
-            if (expression.getOperation().getOpType() == OperationType.ADD || expression.getOperation().getOpType() == OperationType.SUB) {
-                String sign = expression.getOperation().getOpType() == OperationType.ADD ? "" : "-";
-                int register = registerNum(lhs);
+            OperationType opType = expression.getOperation().getOpType();
+            if (opType == OperationType.ADD || opType == OperationType.SUB) {
+                Integer increment = null;
                 if (!expression.getLeftOperand().isLiteral() && expression.getRightOperand().isLiteral()) {
-                    // a = a + 1
-                    if (((Operand) expression.getLeftOperand()).getName().equals(((Operand) lhs).getName())) {
-                        String literal = sign + ((LiteralElement) expression.getRightOperand()).getLiteral();
-                        return JasminInstruction.iinc(register, literal);
+                    // a = a + 1 or a = a - 1
+                    if (sameVariable(lhs, expression.getLeftOperand())) {
+                        int literal = Integer.parseInt(((LiteralElement) expression.getRightOperand()).getLiteral());
+                        increment = opType == OperationType.ADD ? literal : -literal;
                     }
                 } else if (expression.getLeftOperand().isLiteral() && !expression.getRightOperand().isLiteral()) {
-                    // a = 1 + a
-                    if (((Operand) expression.getRightOperand()).getName().equals(((Operand) lhs).getName())) {
-                        String literal = sign + ((LiteralElement) expression.getLeftOperand()).getLiteral();
-                        return JasminInstruction.iinc(register, literal);
+                    // a = 1 + a (but not a = 1 - a)
+                    if (opType == OperationType.ADD && sameVariable(lhs, expression.getRightOperand())) {
+                        increment = Integer.parseInt(((LiteralElement) expression.getLeftOperand()).getLiteral());
                     }
                 }
+
+                // iinc only takes a signed byte
+                if (increment != null && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE) {
+                    return jasmin.iinc(registerNum(lhs), String.valueOf(increment));
+                }
             }
+        }
 
+        // a = b, after a and b were coalesced by the register allocator
+        if (rhs.getInstType() == InstructionType.NOPER
+                && sameRegister(lhs, ((SingleOpInstruction) rhs).getSingleOperand())) {
+            return "";
         }
+
         String rhsString = build(rhs);
         //store to lhs
         String val = store(lhs, rhsString);
@@ -235,6 +247,25 @@ public class InstructionBuilder {
         return code.toString();
     }
 
+    /**
+     * @return whether both elements are variables (not array elements) kept in the same register, which is the case
+     * for the same variable or for variables coalesced by the register allocator
+     */
+    private boolean sameRegister(Element lhs, Element rhs) {
+        if (!(lhs instanceof Operand) || lhs instanceof ArrayOperand) return false;
+        if (!(rhs instanceof Operand) || rhs instanceof ArrayOperand) return false;
+        if (rhs.getType().getTypeOfElement() == ElementType.THIS) return false;
+        if (lookup(lhs) == null || lookup(rhs) == null) return false;
+
+        return registerNum(lhs) == registerNum(rhs);
+    }
+
+    // Jasmin always assembles iinc as iinc_w (6 bytes), so it is only chosen for a variable incrementing itself and
+    // not for two coalesced variables, whose constant would otherwise be hidden in a longer instruction
+    private boolean sameVariable(Element lhs, Element rhs) {
+        return sameRegister(lhs, rhs) && ((Operand) lhs).getName().equals(((Operand) rhs).getName());
+    }
+
     private String build(GetFieldInstruction instruction) {
         StringBuilder code = new StringBuilder();
         Element classElement = instruction.getFirstOperand();
@@ -266,9 +297,9 @@ public class InstructionBuilder {
         Operation operation = instruction.getOperation();
 
         if (operation.getOpType() == OperationType.NOTB) {
-            code.append(JasminInstruction.iconst("1"));
+            code.append(jasmin.iconst("1"));
             code.append(load(element));
-            code.append(JasminInstruction.arithmetic(OperationType.SUB));
+            code.append(jasmin.arithmetic(OperationType.SUB));
         }
 
         return code.toString();
@@ -292,7 +323,7 @@ public class InstructionBuilder {
         } else {
             code.append(leftLoad);
             code.append(rightLoad);
-            code.append(JasminInstruction.arithmetic(type));
+            code.append(jasmin.arithmetic(type));
         }
 
         return code.toString();
@@ -306,16 +337,16 @@ public class InstructionBuilder {
         String label2 = "LTH_" + labelTracker.nextLabelNumber();
 
         if (rhs.isLiteral() && ((LiteralElement) rhs).getLiteral().equals("0")) {
-            code.append(JasminInstruction.iflt(label1));
+            code.append(jasmin.iflt(label1));
         } else {
             code.append(load(rhs));
-            code.append(JasminInstruction.if_icmplt(label1));
+            code.append(jasmin.if_icmplt(label1));
         }
 
-        code.append(JasminInstruction.iconst("0"))
-                .append(JasminInstruction.goto_(label2))
+        code.append(jasmin.iconst("0"))
+                .append(jasmin.goto_(label2))
                 .append(label1).append(":\n")
-                .append(JasminInstruction.iconst("1"))
+                .append(jasmin.iconst("1"))
                 .append(label2).append(":\n");
         return code.toString();
     }
@@ -328,26 +359,26 @@ public class InstructionBuilder {
         String label2 = "GTE_" + labelTracker.nextLabelNumber();
 
         if (rhs.isLiteral() && ((LiteralElement) rhs).getLiteral().equals("0")) {
-            code.append(JasminInstruction.ifge(label1));
+            code.append(jasmin.ifge(label1));
         } else {
             code.append(load(rhs));
-            code.append(JasminInstruction.if_icmpge(label1));
+            code.append(jasmin.if_icmpge(label1));
         }
 
-        code.append(JasminInstruction.iconst("0"))
-                .append(JasminInstruction.goto_(label2))
+        code.append(jasmin.iconst("0"))
+                .append(jasmin.goto_(label2))
                 .append(label1).append(":\n")
-                .append(JasminInstruction.iconst("1"))
+                .append(jasmin.iconst("1"))
                 .append(label2).append(":\n");
         return code.toString();
     }
 
     private String build(GotoInstruction instruction) {
-        return JasminInstruction.goto_(instruction.getLabel());
+        return jasmin.goto_(instruction.getLabel());
     }
 
     private String ifCondition(Instruction condition, String label) {
-        return build(condition) + JasminInstruction.ifne(label);
+        return build(condition) + jasmin.ifne(label);
     }
 
     private String ifConditionBinary(BinaryOpInstruction condition, String label) {
@@ -361,12 +392,12 @@ public class InstructionBuilder {
             String comparison = "";
             code.append(load(lhs));
             if (rhs.isLiteral() && ((LiteralElement) rhs).getLiteral().equals("0")) {
-                comparison = operationType == OperationType.LTH ? JasminInstruction.iflt(label)
-                        : JasminInstruction.ifge(label);
+                comparison = operationType == OperationType.LTH ? jasmin.iflt(label)
+                        : jasmin.ifge(label);
             } else {
                 code.append(load(rhs));
-                comparison = operationType == OperationType.LTH ? JasminInstruction.if_icmplt(label)
-                        : JasminInstruction.if_icmpge(label);
+                comparison = operationType == OperationType.LTH ? jasmin.if_icmplt(label)
+                        : jasmin.if_icmpge(label);
             }
             code.append(comparison);
         } else {
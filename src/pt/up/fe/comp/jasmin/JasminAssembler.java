@@ -0,0 +1,84 @@
+package pt.up.fe.comp.jasmin;
+
+import jas.jasError;
+import jasmin.ClassFile;
+import pt.up.fe.comp.jmm.jasmin.JasminUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+/**
+ * Assembles Jasmin code into a class file in memory, unlike {@link JasminUtils#assemble(File, File)}, which needs the
+ * code in a file and writes the class to a folder.
+ */
+public class JasminAssembler {
+
+    public static class AssembledClass {
+        private final String className;
+        private final byte[] bytes;
+
+        public AssembledClass(String className, byte[] bytes) {
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the name of the class, with '/' separating its package
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Writes the class file to its package folder inside the given output folder.
+         *
+         * @return the written class file
+         */
+        public File write(File outputDir) {
+            String[] classPath = JasminUtils.splitClassField(className);
+            if (classPath[0] != null) {
+                outputDir = new File(outputDir, JasminUtils.convertChars(classPath[0], "./", File.separatorChar));
+            }
+
+            File classFile = new File(outputDir, classPath[1] + ".class");
+            try {
+                Files.createDirectories(outputDir.toPath());
+                Files.write(classFile.toPath(), bytes);
+            } catch (IOException e) {
+                throw new RuntimeException("Class could not be created: " + e.getMessage(), e);
+            }
+            return classFile;
+        }
+    }
+
+    public static AssembledClass assemble(String jasminCode, String sourceName) {
+        try (BufferedReader inp = new BufferedReader(new StringReader(jasminCode))) {
+            ClassFile classFile = new ClassFile();
+            classFile.readJasmin(inp, sourceName, true);
+
+            // if we got some errors, don't output a file - just return.
+            if (classFile.errorCount() > 0) {
+                throw new RuntimeException("Found " + classFile.errorCount() + " errors while compiling Jasmin code.");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            classFile.write(bytes);
+
+            return new AssembledClass(classFile.getClassName(), bytes.toByteArray());
+        } catch (jasError e) {
+            throw new RuntimeException("JAS Error: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Exception while assembling Jasmin code", e);
+        }
+    }
+}
@@ -9,9 +9,13 @@ public class JasminInstruction {
         PUT,
     }
 
-    public static LimitTracker limitTracker = new LimitTracker();
+    private final LimitTracker limitTracker;
 
-    private static String registerInstruction(String inst, int register) {
+    public JasminInstruction(LimitTracker limitTracker) {
+        this.limitTracker = limitTracker;
+    }
+
+    private String registerInstruction(String inst, int register) {
         limitTracker.updateRegisters(register);
         if (register >= 0 && register <= 3) {
             inst = inst + "_";
@@ -21,47 +25,47 @@ public class JasminInstruction {
         return inst + register + "\n";
     }
 
-    public static String pop() {
+    public String pop() {
         limitTracker.updateStack(-1);
         return "pop\n";
     }
 
-    public static String dup() {
+    public String dup() {
         limitTracker.updateStack(1);
         return "dup\n";
     }
 
-    public static String aload(int register) {
+    public String aload(int register) {
         limitTracker.updateStack(1);
         return registerInstruction("aload", register);
     }
 
-    public static String iload(int register) {
+    public String iload(int register) {
         limitTracker.updateStack(1);
         return registerInstruction("iload", register);
     }
 
-    public static String iaload() {
+    public String iaload() {
         limitTracker.updateStack(-1);
         return "iaload\n";
     }
 
-    public static String astore(int register) {
+    public String astore(int register) {
         limitTracker.updateStack(-1);
         return registerInstruction("astore", register);
     }
 
-    public static String istore(int register) {
+    public String istore(int register) {
         limitTracker.updateStack(-1);
         return registerInstruction("istore", register);
     }
 
-    public static String iastore() {
+    public String iastore() {
         limitTracker.updateStack(-3);
         return "iastore\n";
     }
 
-    public static String iconst(String num) {
+    public String iconst(String num) {
         limitTracker.updateStack(1);
         int integer = Integer.parseInt(num);
         String instruction = "";
@@ -79,7 +83,7 @@ public class JasminInstruction {
         return instruction + "\n";
     }
 
-    public static String arithmetic(OperationType type) {
+    public String arithmetic(OperationType type) {
         limitTracker.updateStack(-1);
         return switch (type) {
             case ADD -> "iadd\n";
@@ -91,12 +95,12 @@ public class JasminInstruction {
         };
     }
 
-    public static String arraylength() {
+    public String arraylength() {
         limitTracker.updateStack(0);
         return "arraylength\n";
     }
 
-    public static String field(FieldInstruction type, String className, String fieldName, String fieldType) {
+    public String field(FieldInstruction type, String className, String fieldName, String fieldType) {
         int stackDiff = type == FieldInstruction.GET ? 0 : -2;
         limitTracker.updateStack(stackDiff);
         return type.toString().toLowerCase() + "field" +
@@ -106,7 +110,7 @@ public class JasminInstruction {
                 "\n";
     }
 
-    public static String invoke(CallType callType, String className, String methodName, String argumentsTypes, int argCount, String returnType) {
+    public String invoke(CallType callType, String className, String methodName, String argumentsTypes, int argCount, String returnType) {
         limitTracker.updateStack(-argCount);
 
         return callType.toString() + " " +
@@ -117,50 +121,50 @@ public class JasminInstruction {
                 "\n";
     }
 
-    public static String new_(String className) {
+    public String new_(String className) {
         limitTracker.updateStack(1);
         return "new " + className + '\n';
     }
 
-    public static String newarray() {
+    public String newarray() {
         limitTracker.updateStack(0);
         return "newarray int\n";
     }
 
-    public static String goto_(String label) {
+    public String goto_(String label) {
         limitTracker.updateStack(0);
         return "goto " + label + '\n';
     }
 
-    public static String iinc(int register, String literal) {
+    public String iinc(int register, String literal) {
         return "iinc " + register + " " + literal + "\n";
     }
 
-    public static String ifne(String label) {
+    public String ifne(String label) {
         limitTracker.updateStack(-1);
         return "ifne " + label + '\n';
     }
 
-    public static String ifeq(String label) {
+    public String ifeq(String label) {
         return "ifeq " + label + '\n';
     }
 
-    public static String iflt(String label) {
+    public String iflt(String label) {
         limitTracker.updateStack(-1);
         return "iflt " + label + '\n';
     }
 
-    public static String ifge(String label) {
+    public String ifge(String label) {
         limitTracker.updateStack(-1);
         return "ifge " + label + '\n';
     }
 
-    public static String if_icmplt(String label) {
+    public String if_icmplt(String label) {
         limitTracker.updateStack(-2);
         return "if_icmplt " + label + '\n';
     }
 
-    public static String if_icmpge(String label) {
+    public String if_icmpge(String label) {
         limitTracker.updateStack(-2);
         return "if_icmpge " + label + '\n';
     }
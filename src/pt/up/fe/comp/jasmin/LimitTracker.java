@@ -1,12 +1,9 @@
 package pt.up.fe.comp.jasmin;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class LimitTracker {
     private int runningTotal;
     private int maxSize;
-    private Set<Integer> registers;
+    private int registers;
 
     public LimitTracker() {
         reset();
@@ -18,19 +15,18 @@ public class LimitTracker {
     }
 
     public void updateRegisters(int regNum) {
-        registers.add(regNum);
+        // Registers left unused below the highest one still count towards the limit
+        registers = Math.max(registers, regNum + 1);
     }
 
     public void registersUntil(int size) {
-        for (int i = 0; i < size; i++) {
-            registers.add(i);
-        }
+        registers = Math.max(registers, size);
     }
 
     public void reset() {
         runningTotal = 0;
         maxSize = 0;
-        registers = new HashSet<>();
+        registers = 0;
     }
 
     public int stackLimit() {
@@ -38,6 +34,6 @@ public class LimitTracker {
     }
 
     public int localsLimit() {
-        return registers.size();
+        return registers;
     }
 }
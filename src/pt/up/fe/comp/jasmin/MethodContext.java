@@ -0,0 +1,40 @@
+package pt.up.fe.comp.jasmin;
+
+import org.specs.comp.ollir.Method;
+
+/**
+ * The state of the translation of a single method: its stack and locals limits and its label numbers. Each method
+ * gets its own, so that methods (and classes) can be translated concurrently.
+ */
+public class MethodContext {
+    private final Method method;
+    private final LimitTracker limitTracker;
+    private final LabelTracker labelTracker;
+    private final JasminInstruction jasminInstruction;
+
+    public MethodContext(Method method) {
+        this.method = method;
+        this.limitTracker = new LimitTracker();
+        this.labelTracker = new LabelTracker();
+        this.jasminInstruction = new JasminInstruction(limitTracker);
+
+        // At least will need "this" + params
+        limitTracker.registersUntil(method.getParams().size() + 1);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public LimitTracker getLimitTracker() {
+        return limitTracker;
+    }
+
+    public LabelTracker getLabelTracker() {
+        return labelTracker;
+    }
+
+    public JasminInstruction getJasminInstruction() {
+        return jasminInstruction;
+    }
+}
@@ -1,6 +1,7 @@
 package pt.up.fe.comp.jasmin;
 
 import org.specs.comp.ollir.*;
+import pt.up.fe.comp.stats.CompilationStats;
 
 import java.util.HashMap;
 import java.util.stream.Collectors;
@@ -8,13 +9,10 @@ import java.util.stream.Collectors;
 public class OllirToJasmin {
 
     private final ClassUnit classUnit;
-    private final LabelTracker labelTracker;
 
     public OllirToJasmin(ClassUnit classUnit) {
         this.classUnit = classUnit;
         this.classUnit.buildVarTables();
-
-        this.labelTracker = new LabelTracker();
     }
 
     public String build() {
@@ -47,12 +45,11 @@ public class OllirToJasmin {
 
         code.append("\n\n\n");
 
-        // Methods
-        for (Method method : classUnit.getMethods()) {
-            if (!method.isConstructMethod()) {
-                code.append(build(labelTracker, method));
-            }
-        }
+        // Methods, which are independent of each other, so they are translated in parallel and joined in order
+        code.append(classUnit.getMethods().parallelStream()
+                .filter(method -> !method.isConstructMethod())
+                .map(CompilationStats.propagateFunction(this::build))
+                .collect(Collectors.joining()));
 
         return code.toString();
     }
@@ -91,7 +88,7 @@ public class OllirToJasmin {
         return code.toString();
     }
 
-    public String build(LabelTracker labelTracker, Method method) {
+    public String build(Method method) {
         StringBuilder code = new StringBuilder();
 
         // Modifiers
@@ -119,11 +116,8 @@ public class OllirToJasmin {
         // Method body
         StringBuilder body = new StringBuilder();
 
-        InstructionBuilder builder = new InstructionBuilder(method, labelTracker);
-        JasminInstruction.limitTracker.reset();
-
-        // At least will need "this" + params
-        JasminInstruction.limitTracker.registersUntil(method.getParams().size() + 1);
+        MethodContext context = new MethodContext(method);
+        InstructionBuilder builder = new InstructionBuilder(context);
 
         HashMap<String, Instruction> labels = method.getLabels();
 
@@ -140,15 +134,15 @@ public class OllirToJasmin {
             if (instruction.getInstType() == InstructionType.CALL) {
                 ElementType returnType = ((CallInstruction) instruction).getReturnType().getTypeOfElement();
                 if (returnType != ElementType.VOID || ((CallInstruction) instruction).getInvocationType() == CallType.invokespecial) {
-                    body.append(JasminInstruction.pop());
+                    body.append(context.getJasminInstruction().pop());
                 }
             }
 
         }
 
         // Stack and locals limits
-        code.append(".limit stack ").append(JasminInstruction.limitTracker.stackLimit()).append("\n");
-        code.append(".limit locals ").append(JasminInstruction.limitTracker.localsLimit()).append("\n");
+        code.append(".limit stack ").append(context.getLimitTracker().stackLimit()).append("\n");
+        code.append(".limit locals ").append(context.getLimitTracker().localsLimit()).append("\n");
         code.append(body);
 
         code.append(".end method\n");
@@ -1,28 +1,28 @@
 package pt.up.fe.comp.ollir;
 
+import org.specs.comp.ollir.Element;
+
 public class Action {
     private ActionType actionType;
-    private String context;
+    private Element index;
 
     public Action(ActionType actionType) {
         this.actionType = actionType;
-        this.context = "";
     }
 
     public Action() {
         this.actionType = ActionType.UNDEFINED;
-        this.context = "";
     }
-    public Action(ActionType actionType, String context) {
+    public Action(ActionType actionType, Element index) {
         this.actionType = actionType;
-        this.context = context;
+        this.index = index;
     }
 
     public ActionType getAction() {
         return actionType;
     }
 
-    public String getContext() {
-        return context;
+    public Element getIndex() {
+        return index;
     }
 }
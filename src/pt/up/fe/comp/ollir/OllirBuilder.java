@@ -0,0 +1,529 @@
+package pt.up.fe.comp.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.analysis.AnalysisUtils;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lowers the AST straight into a {@link ClassUnit}, laid out as the OLLIR parser builds one, without going through the
+ * OLLIR text. The text, when needed, is printed back from the class by {@link OllirPrinter}.
+ *
+ * <p>
+ * Each visit returns the value of the expression as an {@link Instruction}: a {@link SingleOpInstruction} for plain
+ * operands, or the operation itself when the caller asked for it with {@link ActionType#RET_VAL}.
+ */
+public class OllirBuilder extends AJmmVisitor<Action, Instruction> {
+    private final SymbolTable symbolTable;
+    private final ClassUnit ollirClass;
+    private Method method;
+    private final List<String> pendingLabels;
+    private int temporaryVarCounter = 0;
+    private int labelCounter = 0;
+
+    public OllirBuilder(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.ollirClass = new ClassUnit();
+        this.pendingLabels = new ArrayList<>();
+
+        addVisit("Program", this::programVisit);
+        addVisit("ClassDeclaration", this::classDeclarationVisit);
+        addVisit("MainMethodDef", this::methodDefVisit);
+        addVisit("MethodDef", this::methodDefVisit);
+        addVisit("VarDeclaration", this::varDeclarationVisit);
+        addVisit("MethodCall", this::methodCallVisit);
+        addVisit("Identifier", this::identifierVisit);
+        addVisit("Assignment", this::assignmentVisit);
+        addVisit("IntegerLiteral", this::terminalVisit);
+        addVisit("BooleanLiteral", this::terminalVisit);
+        addVisit("BinaryOp", this::binaryOpVisit);
+        addVisit("ReturnStatement", this::returnStatementVisit);
+        addVisit("NewIntArray", this::newIntArrayVisit);
+        addVisit("LengthCall", this::lengthCallVisit);
+        addVisit("Indexing", this::indexingVisit);
+        addVisit("NewObject", this::newObjectVisit);
+        addVisit("NotExpression", this::notExpressionVisit);
+        addVisit("ThisKeyword", this::thisKeywordVisit);
+        addVisit("IfThenElseStatement", this::ifThenElseStatementVisit);
+        addVisit("ScopeStatement", this::scopeStatementVisit);
+        addVisit("WhileStatement", this::whileStatementVisit);
+    }
+
+    /**
+     * @return the built class, with its var tables already built
+     */
+    public ClassUnit getOllirClass() {
+        ollirClass.buildVarTables();
+        return ollirClass;
+    }
+
+    private String getNextLabel(LabelType label) {
+        return label.name() + "_" + labelCounter++;
+    }
+
+    private String getNextTempName() {
+        return "temp_" + temporaryVarCounter++;
+    }
+
+    // Labels are attached to the next instruction, like the OLLIR parser does
+    private void addLabel(String label) {
+        pendingLabels.add(label);
+    }
+
+    private void addInstr(Instruction instruction) {
+        for (String label: pendingLabels) {
+            method.addLabel(label, instruction);
+        }
+        pendingLabels.clear();
+        method.addInstr(instruction);
+    }
+
+    private Instruction assignToTemp(String temp, org.specs.comp.ollir.Type type, Instruction rhs) {
+        addInstr(new AssignInstruction(new Operand(temp, type), type, rhs));
+        return new SingleOpInstruction(new Operand(temp, type));
+    }
+
+    private static Element getOperand(Instruction value) {
+        if (value instanceof SingleOpInstruction singleOp) {
+            return singleOp.getSingleOperand();
+        }
+
+        throw new RuntimeException("Expected an operand, found " + value.getClass().getSimpleName());
+    }
+
+    private Operand thisOperand() {
+        return new Operand("this", new ClassType(ElementType.THIS, ollirClass.getClassName()));
+    }
+
+    private static Element methodName(String name) {
+        return new LiteralElement("\"" + name + "\"", new org.specs.comp.ollir.Type(ElementType.STRING));
+    }
+
+    private static CondBranchInstruction branch(Instruction condition, String label) {
+        CondBranchInstruction branch;
+        if (condition instanceof SingleOpInstruction singleOp) {
+            branch = new SingleOpCondInstruction(singleOp);
+        } else if (condition instanceof OpInstruction op) {
+            branch = new OpCondInstruction(op);
+        } else {
+            throw new RuntimeException("Found invalid expression in 'if' condition of type "
+                    + condition.getClass().getSimpleName());
+        }
+
+        branch.setLabel(label);
+        return branch;
+    }
+
+    private Instruction programVisit(JmmNode program, Action action) {
+        for (String importString: symbolTable.getImports()) {
+            ollirClass.addImport(importString);
+        }
+
+        for (JmmNode child: program.getChildren()) {
+            visit(child, new Action());
+        }
+        return null;
+    }
+
+    private void addEmptyConstructor() {
+        Method constructor = new Method(ollirClass);
+        constructor.setConstructMethod();
+        constructor.setMethodName(symbolTable.getClassName());
+        constructor.setReturnType(new org.specs.comp.ollir.Type(ElementType.VOID));
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, thisOperand(), methodName("<init>"),
+                new ArrayList<>(), new org.specs.comp.ollir.Type(ElementType.VOID)));
+
+        ollirClass.addMethod(constructor);
+    }
+
+    private Instruction classDeclarationVisit(JmmNode classDeclaration, Action action) {
+        ollirClass.setClassName(symbolTable.getClassName());
+
+        String superClass = symbolTable.getSuper();
+        if (superClass != null) {
+            ollirClass.setSuperClass(superClass);
+        }
+
+        boolean insertedConstructor = false;
+
+        for (JmmNode child: classDeclaration.getChildren()) {
+
+            if (!child.getKind().equals("VarDeclaration")
+                    && !insertedConstructor) {
+                addEmptyConstructor();
+                insertedConstructor = true;
+            }
+
+            visit(child, action);
+        }
+
+        return null;
+    }
+
+    private Instruction methodDefVisit(JmmNode methodNode, Action action) {
+        String methodSignature = methodNode.get("signature");
+
+        method = new Method(ollirClass);
+        method.setMethodAccessModifier(AccessModifiers.PUBLIC);
+        if (methodNode.getKind().equals("MainMethodDef")) method.setStaticMethod();
+        method.setMethodName(methodNode.get("name"));
+
+        int paramId = method.isStaticMethod() ? 0 : 1;
+        for (Symbol parameter: symbolTable.getParameters(methodSignature)) {
+            Operand param = new Operand(parameter.getName(), OllirUtils.toOllirType(parameter.getType()));
+            param.setParamId(paramId++);
+            method.addParam(param);
+        }
+
+        method.setReturnType(OllirUtils.toOllirType(symbolTable.getReturnType(methodSignature)));
+
+        for (JmmNode methodChild: methodNode.getChildren()) {
+            if (methodChild.getKind().equals("MethodBody")) {
+                for (JmmNode child: methodChild.getChildren()) {
+                    visit(child, action);
+                }
+                break;
+            }
+        }
+
+        if (methodNode.getKind().equals("MainMethodDef")) {
+            ReturnInstruction ret = new ReturnInstruction();
+            ret.setReturnType(new org.specs.comp.ollir.Type(ElementType.VOID));
+            addInstr(ret);
+        }
+
+        ollirClass.addMethod(method);
+
+        return null;
+    }
+
+    private Instruction varDeclarationVisit(JmmNode variableDeclaration, Action action) {
+
+        if (!variableDeclaration.getJmmParent().getKind().equals("ClassDeclaration"))
+            return null;
+
+        Field field = new Field();
+        field.setFieldAccessModifier(AccessModifiers.PRIVATE);
+        field.setFieldName(variableDeclaration.get("name"));
+        field.setFieldType(OllirUtils.toOllirType(AnalysisUtils.getType(variableDeclaration.getJmmChild(0))));
+        ollirClass.addField(field);
+
+        return null;
+    }
+
+    private Instruction assignmentVisit(JmmNode assignment, Action action) {
+
+        JmmNode identifier = assignment.getJmmChild(0);
+
+        if (OllirUtils.isClassVariable(symbolTable, identifier)) {
+            Element lhs = getOperand(visit(identifier, new Action(ActionType.ASSIGN_TO_FIELD)));
+            Element rhs = getOperand(visit(assignment.getJmmChild(1), new Action(ActionType.SAVE_TO_TMP)));
+            addInstr(new PutFieldInstruction(thisOperand(), lhs, rhs,
+                    new org.specs.comp.ollir.Type(ElementType.VOID)));
+        } else {
+            Element lhs = getOperand(visit(identifier, action));
+            Instruction rhs = visit(assignment.getJmmChild(1), new Action(ActionType.RET_VAL));
+            addInstr(new AssignInstruction(lhs, OllirUtils.toOllirType(AnalysisUtils.getType(identifier)), rhs));
+        }
+
+        return null;
+    }
+
+    private Instruction binaryOpVisit(JmmNode jmmNode, Action action) {
+
+        Element lhs = getOperand(visit(jmmNode.getJmmChild(0), new Action(ActionType.SAVE_TO_TMP)));
+        Element rhs = getOperand(visit(jmmNode.getJmmChild(1), new Action(ActionType.SAVE_TO_TMP)));
+        Type tempType = AnalysisUtils.getType(jmmNode);
+        String temp = getNextTempName();
+
+        Operation operation = new Operation(OllirUtils.getOperationType(jmmNode.get("op")),
+                OllirUtils.toOllirType(tempType));
+        Instruction binaryOp = new BinaryOpInstruction(lhs, operation, rhs);
+
+        if (action.getAction() == ActionType.RET_VAL) {
+            return binaryOp;
+        }
+
+        return assignToTemp(temp, OllirUtils.toOllirType(tempType), binaryOp);
+    }
+
+    private Instruction terminalVisit(JmmNode terminalNode, Action action) {
+        return new SingleOpInstruction(new LiteralElement(terminalNode.get("val"),
+                OllirUtils.toOllirType(AnalysisUtils.getType(terminalNode))));
+    }
+
+    private Instruction returnStatementVisit(JmmNode jmmNode, Action action) {
+        JmmNode returnNode = jmmNode.getJmmChild(0);
+        Type returnType = AnalysisUtils.getType(returnNode);
+        Instruction returnVal = visit(returnNode, new Action(ActionType.SAVE_TO_TMP));
+
+        Element operand;
+        if (returnNode.getKind().equals("ThisKeyword")) {
+            operand = new Operand("this", OllirUtils.toOllirType(returnType));
+        } else {
+            operand = getOperand(returnVal);
+        }
+
+        ReturnInstruction ret = new ReturnInstruction(operand);
+        ret.setReturnType(OllirUtils.toOllirType(returnType));
+        addInstr(ret);
+
+        return null;
+    }
+
+    private Instruction methodCallVisit(JmmNode method, Action action) {
+
+        JmmNode identifier = method.getJmmChild(0);
+        JmmNode methodArguments = method.getJmmChild(1);
+        Optional<String> type = identifier.getOptional("type");
+        Element id = getOperand(visit(identifier, new Action(ActionType.SAVE_TO_TMP)));
+
+        ArrayList<Element> args = new ArrayList<>();
+        for (JmmNode child: methodArguments.getChildren()) {
+            args.add(getOperand(visit(child, new Action(ActionType.SAVE_TO_TMP))));
+        }
+
+        if (id instanceof Operand operand && operand.isParameter()) {
+            Type identifierType = AnalysisUtils.getType(identifier);
+            id = getOperand(assignToTemp(getNextTempName(), OllirUtils.toOllirType(identifierType),
+                    new SingleOpInstruction(id)));
+        }
+
+        Type callType = AnalysisUtils.getType(method);
+        CallInstruction call = new CallInstruction(
+                type.isPresent() ? CallType.invokevirtual : CallType.invokestatic,
+                id, methodName(method.get("methodname")), args, OllirUtils.toOllirType(callType));
+
+        // method call needs to be safe to temp
+        if (action.getAction() == ActionType.RET_VAL || action.getAction() == ActionType.SAVE_TO_TMP) {
+            return assignToTemp(getNextTempName(), OllirUtils.toOllirType(callType), call);
+        } else if (action.getAction() == ActionType.SAVE_FOR_IDX) {
+            String temp = getNextTempName();
+            assignToTemp(temp, OllirUtils.toOllirType(callType), call);
+
+            ArrayList<Element> indexes = new ArrayList<>(List.of(action.getIndex()));
+            return new SingleOpInstruction(new ArrayOperand(temp, OllirUtils.toOllirType(callType, true), indexes));
+        }
+
+        addInstr(call);
+        return null;
+    }
+
+    private Instruction newIntArrayVisit(JmmNode jmmNode, Action action) {
+
+        Element arrVal = getOperand(visit(jmmNode.getJmmChild(0), new Action(ActionType.SAVE_TO_TMP)));
+        Type arrayType = AnalysisUtils.getType(jmmNode);
+
+        Instruction newIntArray = new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()),
+                new ArrayList<>(List.of(arrVal)), OllirUtils.toOllirType(arrayType));
+
+        if (action.getAction() != ActionType.SAVE_TO_TMP) {
+            return newIntArray;
+        }
+
+        return assignToTemp(getNextTempName(), OllirUtils.toOllirType(arrayType), newIntArray);
+    }
+
+    private Instruction lengthCallVisit(JmmNode jmmNode, Action action) {
+
+        Element callee = getOperand(visit(jmmNode.getJmmChild(0), action));
+        Type callType = AnalysisUtils.getType(jmmNode);
+
+        return assignToTemp(getNextTempName(), OllirUtils.toOllirType(callType),
+                new CallInstruction(CallType.arraylength, callee, OllirUtils.toOllirType(callType)));
+    }
+
+    private Instruction indexingVisit(JmmNode jmmNode, Action action) {
+
+        JmmNode identifier = jmmNode.getJmmChild(0);
+        Instruction indexValue = visit(jmmNode.getJmmChild(1), action);
+        Type indexType = AnalysisUtils.getType(jmmNode);
+
+        Element indexTemp = getOperand(assignToTemp(getNextTempName(), OllirUtils.toOllirType(indexType),
+                indexValue));
+
+        if (identifier.getKind().equals("Identifier")) {
+            if (action.getAction() == ActionType.SAVE_TO_TMP)
+                return visit(identifier, new Action(ActionType.SAVE_ARR_TMP, indexTemp));
+            else return visit(identifier, new Action(ActionType.SAVE_FOR_IDX, indexTemp));
+        }
+
+        Operand array = (Operand) getOperand(visit(identifier, new Action(ActionType.SAVE_TO_TMP)));
+        Type identifierType = AnalysisUtils.getType(identifier);
+
+        ArrayOperand arrayAccess = new ArrayOperand(array.getName(), OllirUtils.toOllirType(identifierType, true),
+                new ArrayList<>(List.of(indexTemp)));
+        if (array.isParameter()) arrayAccess.setParamId(array.getParamId());
+
+        return assignToTemp(getNextTempName(), OllirUtils.toOllirType(identifierType, true),
+                new SingleOpInstruction(arrayAccess));
+    }
+
+    private Instruction newObjectVisit(JmmNode jmmNode, Action action) {
+
+        Type objType = AnalysisUtils.getType(jmmNode);
+        String className = jmmNode.get("type");
+
+        Instruction newObj = new CallInstruction(CallType.NEW,
+                new Operand(className, new ClassType(ElementType.OBJECTREF, className)),
+                new ArrayList<>(), OllirUtils.toOllirType(objType));
+
+        String temp = getNextTempName();
+        Instruction result = assignToTemp(temp, OllirUtils.toOllirType(objType), newObj);
+
+        addInstr(new CallInstruction(CallType.invokespecial, new Operand(temp, OllirUtils.toOllirType(objType)),
+                methodName("<init>"), new ArrayList<>(), new org.specs.comp.ollir.Type(ElementType.VOID)));
+
+        return result;
+    }
+
+    private Instruction identifierVisit(JmmNode identifier, Action action) {
+
+        Optional<String> type = identifier.getOptional("type");
+
+        if (type.isEmpty()) {
+            return new SingleOpInstruction(new Operand(identifier.get("name"),
+                    new ClassType(ElementType.CLASS, ollirClass.getClassName())));
+        }
+
+        int index = OllirUtils.getArgumentVariableIndex(symbolTable, identifier);
+        Type identifierType = AnalysisUtils.getType(identifier);
+        String name = identifier.get("name");
+
+        if (OllirUtils.isClassVariable(symbolTable, identifier) && action.getAction() != ActionType.ASSIGN_TO_FIELD) {
+            Instruction getField = new GetFieldInstruction(thisOperand(),
+                    new Operand(name, OllirUtils.toOllirType(identifierType)),
+                    OllirUtils.toOllirType(identifierType));
+
+            return assignToTemp(getNextTempName(), OllirUtils.toOllirType(identifierType), getField);
+        }
+
+        if (action.getAction() != ActionType.SAVE_FOR_IDX
+                && action.getAction() != ActionType.SAVE_ARR_TMP) {
+            Operand operand = new Operand(name, OllirUtils.toOllirType(identifierType));
+            if (index != -1) operand.setParamId(index + 1);
+            return new SingleOpInstruction(operand);
+        }
+
+        ArrayOperand arrayAccess = new ArrayOperand(name, OllirUtils.toOllirType(identifierType, true),
+                new ArrayList<>(List.of(action.getIndex())));
+        if (index != -1) arrayAccess.setParamId(index + 1);
+
+        if (action.getAction() == ActionType.SAVE_FOR_IDX) {
+            return new SingleOpInstruction(arrayAccess);
+        }
+
+        return assignToTemp(getNextTempName(), OllirUtils.toOllirType(identifierType, true),
+                new SingleOpInstruction(arrayAccess));
+    }
+
+    private Instruction notExpressionVisit(JmmNode jmmNode, Action action) {
+
+        Type callType = AnalysisUtils.getType(jmmNode);
+        Operation operation = new Operation(OperationType.NOTB, OllirUtils.toOllirType(callType));
+
+        if (action.getAction() == ActionType.RET_VAL) {
+            Element callee = getOperand(visit(jmmNode.getJmmChild(0), new Action(ActionType.SAVE_TO_TMP)));
+            return new UnaryOpInstruction(operation, callee);
+        }
+
+        Element callee = getOperand(visit(jmmNode.getJmmChild(0), action));
+        return assignToTemp(getNextTempName(), OllirUtils.toOllirType(callType),
+                new UnaryOpInstruction(operation, callee));
+    }
+
+    private Instruction thisKeywordVisit(JmmNode jmmNode, Action action) {
+        return new SingleOpInstruction(thisOperand());
+    }
+
+    private Instruction ifThenElseStatementVisit(JmmNode jmmNode, Action action) {
+
+        Instruction condition = visit(jmmNode.getJmmChild(0), new Action(ActionType.RET_VAL));
+        String thenLabel = getNextLabel(LabelType.THEN);
+        String endifLabel = getNextLabel(LabelType.ENDIF);
+
+        JmmNode thenNode = jmmNode.getJmmChild(1);
+        JmmNode elseNode = jmmNode.getJmmChild(2);
+
+        addInstr(branch(condition, thenLabel));
+
+        visit(elseNode, action);
+
+        addInstr(new GotoInstruction(endifLabel));
+        addLabel(thenLabel);
+
+        visit(thenNode, action);
+
+        addLabel(endifLabel);
+
+        return null;
+    }
+
+    private Instruction scopeStatementVisit(JmmNode jmmNode, Action action) {
+        for (JmmNode child : jmmNode.getChildren()) {
+            visit(child, action);
+        }
+        return null;
+    }
+
+    private Instruction whileStatementVisit(JmmNode jmmNode, Action action) {
+        Optional<String> type = jmmNode.getOptional("dowhile");
+        String bodyLabel = getNextLabel(LabelType.BODY);
+        JmmNode conditionNode = jmmNode.getJmmChild(0);
+        JmmNode bodyNode = jmmNode.getJmmChild(1);
+
+        if (type.isPresent()) {
+            addLabel(bodyLabel);
+
+            visit(bodyNode, action);
+            Instruction condition = visit(conditionNode, new Action(ActionType.RET_VAL));
+            addInstr(branch(condition, bodyLabel));
+            return null;
+        }
+        String endLoopLabel = getNextLabel(LabelType.ENDLOOP);
+        String oppositeOp = null;
+        Optional<String> op = conditionNode.getOptional("op");
+
+        if (conditionNode.getKind().equals("BinaryOp") && op.isPresent()) {
+            oppositeOp = switch (op.get()) {
+                case "<" -> ">=";
+                case ">=" -> "<";
+                default -> null;
+            };
+
+        }
+        if (oppositeOp != null) {
+            conditionNode.put("op", oppositeOp);
+            Instruction condition = visit(conditionNode, new Action(ActionType.RET_VAL));
+            addInstr(branch(condition, endLoopLabel));
+            addLabel(bodyLabel);
+            conditionNode.put("op", op.get());
+        } else if (conditionNode.getKind().equals("NotExpression")) {
+            Instruction condition = visit(conditionNode.getJmmChild(0), new Action(ActionType.RET_VAL));
+            addInstr(branch(condition, endLoopLabel));
+            addLabel(bodyLabel);
+        } else {
+            Element conditionToNegate = getOperand(visit(conditionNode, new Action(ActionType.SAVE_TO_TMP)));
+            Type callType = AnalysisUtils.getType(conditionNode);
+
+            Operation not = new Operation(OperationType.NOTB, OllirUtils.toOllirType(callType));
+            addInstr(branch(new UnaryOpInstruction(not, conditionToNegate), endLoopLabel));
+            addLabel(bodyLabel);
+        }
+
+        visit(bodyNode, action);
+        Instruction condition = visit(conditionNode, new Action(ActionType.RET_VAL));
+
+        addInstr(branch(condition, bodyLabel));
+        addLabel(endLoopLabel);
+
+        return null;
+    }
+}
@@ -0,0 +1,210 @@
+package pt.up.fe.comp.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.HashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Prints a {@link ClassUnit} as OLLIR code that the OLLIR parser reads back into the same class.
+ */
+public class OllirPrinter {
+
+    private final ClassUnit classUnit;
+
+    public OllirPrinter(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+    }
+
+    public String build() {
+        StringBuilder code = new StringBuilder();
+
+        for (String importString: classUnit.getImports()) {
+            code.append("import ").append(importString).append(";\n");
+        }
+
+        code.append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) {
+            code.append(" extends ").append(classUnit.getSuperClass());
+        }
+        code.append(" {\n");
+
+        for (Field field: classUnit.getFields()) {
+            code.append(".field private ").append(field.getFieldName()).append(".")
+                    .append(getCode(field.getFieldType())).append(";\n");
+        }
+
+        for (Method method: classUnit.getMethods()) {
+            code.append(build(method));
+        }
+
+        code.append("}\n");
+
+        return code.toString();
+    }
+
+    public String build(Method method) {
+        StringBuilder code = new StringBuilder();
+
+        if (method.isConstructMethod()) {
+            code.append(".construct ");
+        } else {
+            code.append(".method public ");
+            if (method.isStaticMethod()) code.append("static ");
+        }
+
+        code.append(method.getMethodName()).append("(")
+                .append(method.getParams().stream()
+                        .map(param -> ((Operand) param).getName() + "." + getCode(param.getType()))
+                        .collect(Collectors.joining(", ")))
+                .append(").")
+                .append(getCode(method.getReturnType()))
+                .append(" {\n");
+
+        HashMap<String, Instruction> labels = method.getLabels();
+
+        for (Instruction instruction: method.getInstructions()) {
+            for (String label: labels.keySet()) {
+                if (labels.get(label) == instruction) {
+                    code.append(label).append(":\n");
+                }
+            }
+
+            code.append(build(instruction)).append(";\n");
+        }
+
+        code.append("}\n\n");
+
+        return code.toString();
+    }
+
+    private String build(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case CALL -> build((CallInstruction) instruction);
+            case RETURN -> build((ReturnInstruction) instruction);
+            case ASSIGN -> build((AssignInstruction) instruction);
+            case GETFIELD -> build((GetFieldInstruction) instruction);
+            case PUTFIELD -> build((PutFieldInstruction) instruction);
+            case NOPER -> getCode(((SingleOpInstruction) instruction).getSingleOperand());
+            case UNARYOPER -> build((UnaryOpInstruction) instruction);
+            case BINARYOPER -> build((BinaryOpInstruction) instruction);
+            case GOTO -> "goto " + ((GotoInstruction) instruction).getLabel();
+            case BRANCH -> build((CondBranchInstruction) instruction);
+        };
+    }
+
+    private String build(CallInstruction instruction) {
+        StringBuilder code = new StringBuilder();
+        CallType callType = instruction.getInvocationType();
+
+        switch (callType) {
+            case NEW -> code.append("new(").append(((Operand) instruction.getFirstArg()).getName());
+            case arraylength -> code.append("arraylength(").append(getCode(instruction.getFirstArg()));
+            default -> code.append(callType.name()).append("(")
+                    .append(getCode(instruction.getFirstArg()))
+                    .append(", ").append(((LiteralElement) instruction.getSecondArg()).getLiteral());
+        }
+
+        // Calls without arguments, like arraylength, have no list of operands
+        if (instruction.getListOfOperands() != null) {
+            for (Element operand: instruction.getListOfOperands()) {
+                code.append(", ").append(getArgumentCode(operand));
+            }
+        }
+
+        return code.append(").").append(getCode(instruction.getReturnType())).toString();
+    }
+
+    private String build(ReturnInstruction instruction) {
+        if (!instruction.hasReturnValue()) return "ret.V";
+
+        return "ret." + getCode(instruction.getReturnType()) + " " + getCode(instruction.getOperand());
+    }
+
+    private String build(AssignInstruction instruction) {
+        return getCode(instruction.getDest()) + " :=." + getCode(instruction.getTypeOfAssign()) + " "
+                + build(instruction.getRhs());
+    }
+
+    private String build(GetFieldInstruction instruction) {
+        return "getfield(" + getCode(instruction.getFirstOperand()) + ", " + getCode(instruction.getSecondOperand())
+                + ")." + getCode(instruction.getFieldType());
+    }
+
+    private String build(PutFieldInstruction instruction) {
+        return "putfield(" + getCode(instruction.getFirstOperand()) + ", " + getCode(instruction.getSecondOperand())
+                + ", " + getCode(instruction.getThirdOperand()) + ").V";
+    }
+
+    private String build(UnaryOpInstruction instruction) {
+        Operation operation = instruction.getOperation();
+        return OllirUtils.getOperator(operation.getOpType()) + "." + getCode(operation.getTypeInfo()) + " "
+                + getCode(instruction.getOperand());
+    }
+
+    private String build(BinaryOpInstruction instruction) {
+        Operation operation = instruction.getOperation();
+        return getCode(instruction.getLeftOperand()) + " " + OllirUtils.getOperator(operation.getOpType()) + "."
+                + getCode(operation.getTypeInfo()) + " " + getCode(instruction.getRightOperand());
+    }
+
+    private String build(CondBranchInstruction instruction) {
+        Instruction condition = instruction instanceof OpCondInstruction opCond
+                ? opCond.getCondition()
+                : ((SingleOpCondInstruction) instruction).getCondition();
+        return "if (" + build(condition) + ") goto " + instruction.getLabel();
+    }
+
+    private String getCode(Element element) {
+        if (element.isLiteral()) {
+            return ((LiteralElement) element).getLiteral() + "." + getCode(element.getType());
+        }
+
+        Operand operand = (Operand) element;
+        ElementType type = operand.getType().getTypeOfElement();
+
+        // The receiver of a call or field access is written without a type, as is the class of a static call
+        if (type == ElementType.THIS || type == ElementType.CLASS) {
+            return operand.getName();
+        }
+
+        StringBuilder code = new StringBuilder();
+        if (operand.isParameter()) {
+            code.append("$").append(operand.getParamId()).append(".");
+        }
+        code.append(operand.getName());
+        if (operand instanceof ArrayOperand arrayOperand) {
+            code.append("[").append(getCode(arrayOperand.getIndexOperands().get(0))).append("]");
+        }
+
+        return code.append(".").append(getCode(operand.getType())).toString();
+    }
+
+    // The parser only takes an untyped "this" as the receiver, so as an argument it needs the class type
+    private String getArgumentCode(Element element) {
+        if (element.getType().getTypeOfElement() == ElementType.THIS) {
+            return "this." + getCode(element.getType());
+        }
+
+        return getCode(element);
+    }
+
+    private static String getCode(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "i32";
+            case BOOLEAN -> "bool";
+            case STRING -> "String";
+            case VOID -> "V";
+            case ARRAYREF -> "array." + getElementCode((ArrayType) type);
+            case OBJECTREF, CLASS, THIS -> ((ClassType) type).getName();
+        };
+    }
+
+    private static String getElementCode(ArrayType type) {
+        return switch (type.getArrayType()) {
+            case INT32 -> "i32";
+            case STRING -> "String";
+            default -> type.getElementClass();
+        };
+    }
+}
@@ -1,59 +1,166 @@
 package pt.up.fe.comp.ollir;
 
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ElementType;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Node;
+import org.specs.comp.ollir.NodeType;
+import org.specs.comp.ollir.OperationType;
+import pt.up.fe.comp.analysis.AnalysisUtils;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class OllirUtils {
 
-    public static String getCode(Symbol symbol) {
-        return symbol.getName() + "." + getCode(symbol.getType());
+    public static String getOllirType(String jmmType) {
+
+        switch (jmmType) {
+            case "void":
+            case "#UNKNOWN":
+                return "V";
+            case "int": return "i32";
+            case "boolean": return "bool";
+            default: return jmmType;
+        }
     }
 
-    public static String getCode(Symbol symbol, String index) {
-        return symbol.getName() + "[" + index + "]." + getCode(symbol.getType(), true);
+    /**
+     * Builds the OLLIR type that the OLLIR parser creates for the given type.
+     */
+    public static org.specs.comp.ollir.Type toOllirType(Type type, boolean indexed) {
+        String name = type.getName();
+        ElementType elementType = switch (getOllirType(name)) {
+            case "V" -> ElementType.VOID;
+            case "i32" -> ElementType.INT32;
+            case "bool" -> ElementType.BOOLEAN;
+            case "String" -> ElementType.STRING;
+            default -> ElementType.OBJECTREF;
+        };
+
+        if (type.isArray() && !indexed) {
+            ArrayType arrayType = new ArrayType();
+            arrayType.setNumDimensions(1);
+            arrayType.setTypeOfElements(elementType);
+            if (elementType == ElementType.OBJECTREF) {
+                arrayType.setElementClass(name);
+            } else if (elementType == ElementType.STRING) {
+                arrayType.setElementClass("String");
+            }
+            return arrayType;
+        }
+
+        if (elementType == ElementType.OBJECTREF) {
+            return new ClassType(ElementType.OBJECTREF, name);
+        }
+        return new org.specs.comp.ollir.Type(elementType);
     }
 
-    public static String getCode(String value, Type type) {
-        return value + "." + getCode(type);
+    public static org.specs.comp.ollir.Type toOllirType(Type type) {
+        return toOllirType(type, false);
     }
 
-    public static String getTempCode(String value, Type type) {
-        return "temp_" + value + "." + getCode(type);
+    public static OperationType getOperationType(String jmmOp) {
+        return switch (jmmOp) {
+            case "&&" -> OperationType.ANDB;
+            case "||" -> OperationType.ORB;
+            case "<" -> OperationType.LTH;
+            case "<=" -> OperationType.LTE;
+            case ">" -> OperationType.GTH;
+            case ">=" -> OperationType.GTE;
+            case "==" -> OperationType.EQ;
+            case "!=" -> OperationType.NEQ;
+            case "+" -> OperationType.ADD;
+            case "-" -> OperationType.SUB;
+            case "*" -> OperationType.MUL;
+            case "/" -> OperationType.DIV;
+            default -> throw new RuntimeException("Unknown operator: " + jmmOp);
+        };
     }
 
-    public static String getTempCodeIndexed(String value, Type type) {
-        return "temp_" + value + "." + getCode(type, true);
+    public static String getOperator(OperationType operationType) {
+        return switch (operationType) {
+            case ANDB -> "&&";
+            case ORB -> "||";
+            case NOTB -> "!";
+            case LTH -> "<";
+            case LTE -> "<=";
+            case GTH -> ">";
+            case GTE -> ">=";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            default -> throw new RuntimeException("Operator has no OLLIR code: " + operationType);
+        };
     }
 
-    public static String getTempCode(Symbol symbol, String index) {
-        return "temp_" + symbol.getName() + "[" + index + "]." + getCode(symbol.getType(), true);
+    private static String getMethodSignature(JmmNode identifier) {
+        return identifier
+                .getAncestor("MethodDef")
+                .or(() -> identifier.getAncestor("MainMethodDef"))
+                .get()
+                .get("signature");
     }
 
-    public static String getCode(Type type, Boolean indexed) {
-        StringBuilder code = new StringBuilder();
+    public static boolean isLocalVariable(SymbolTable symbolTable, JmmNode identifier) {
+        if (!identifier.getKind().equals("Identifier")) return false;
 
-        if (type.isArray() && !indexed) {
-            code.append("array.");
-        }
+        return symbolTable.getLocalVariables(getMethodSignature(identifier)).
+                contains(new Symbol(AnalysisUtils.getType(identifier), identifier.get("name")));
+    }
 
-        code.append(getOllirType(type.getName()));
+    public static int getArgumentVariableIndex(SymbolTable symbolTable, JmmNode identifier) {
+        if (!identifier.getKind().equals("Identifier")
+                && !isLocalVariable(symbolTable, identifier)) return -1;
 
-        return code.toString();
+        return symbolTable.getParameters(getMethodSignature(identifier)).indexOf(
+                new Symbol(AnalysisUtils.getType(identifier), identifier.get("name"))
+                );
     }
 
-    public static String getCode(Type type) {
-        return getCode(type, false);
-    }
+    public static boolean isClassVariable(SymbolTable symbolTable, JmmNode identifier) {
 
-    public static String getOllirType(String jmmType) {
+        if (!identifier.getKind().equals("Identifier")) return false;
 
-        switch (jmmType) {
-            case "void":
-            case "#UNKNOWN":
-                return "V";
-            case "int": return "i32";
-            case "boolean": return "bool";
-            default: return jmmType;
+        int index = symbolTable.getFields().indexOf(
+                new Symbol(AnalysisUtils.getType(identifier), identifier.get("name"))
+        );
+
+        return !isLocalVariable(symbolTable, identifier) &&
+                getArgumentVariableIndex(symbolTable, identifier) == -1 &&
+                index != -1;
+
+    }
+
+    /**
+     * Builds the CFG of a method again after its instructions changed. {@link Method#buildCFG()} only adds edges, so
+     * the ones of the previous CFG are removed first.
+     */
+    public static void rebuildCFG(Method method) {
+        List<Node> nodes = new ArrayList<>(method.getInstructions());
+        // The begin and end nodes can only be reached through the instructions until the first CFG is built
+        for (Instruction instruction: method.getInstructions()) {
+            for (Node pred: instruction.getPredecessors()) {
+                if (pred.getNodeType() == NodeType.BEGIN) nodes.add(pred);
+            }
+            for (Node succ: instruction.getSuccessors()) {
+                if (succ.getNodeType() == NodeType.END) nodes.add(succ);
+            }
         }
+        for (Node node: nodes) {
+            node.getSuccessors().clear();
+            node.getPredecessors().clear();
+        }
+
+        method.buildCFG();
     }
 }
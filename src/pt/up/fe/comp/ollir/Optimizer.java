@@ -1,10 +1,14 @@
 package pt.up.fe.comp.ollir;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.ollir.optimize.ConstantPropagationVisitor;
 import pt.up.fe.comp.ollir.optimize.DataFlowAnalysis;
+import pt.up.fe.comp.ollir.optimize.LoopUnrolling;
+import pt.up.fe.comp.stats.CompilationStats;
+import pt.up.fe.comp.stats.PipelineStage;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -21,6 +25,7 @@ public class Optimizer implements JmmOptimization {
         do {
             constantPropagationVisitor = new ConstantPropagationVisitor();
             constantPropagationVisitor.visit(semanticsResult.getRootNode(), new HashMap<>());
+            CompilationStats.addIterations(PipelineStage.AST_OPTIMIZATION, 1);
         } while (constantPropagationVisitor.hasChanged());
 
         // simplify while
@@ -32,11 +37,14 @@ public class Optimizer implements JmmOptimization {
 
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
-        OllirGenerator ollirGenerator = new OllirGenerator(semanticsResult.getSymbolTable());
-        ollirGenerator.visit(semanticsResult.getRootNode());
-        String ollirCode = ollirGenerator.getCode();
+        OllirBuilder ollirBuilder = new OllirBuilder(semanticsResult.getSymbolTable());
+        ollirBuilder.visit(semanticsResult.getRootNode());
 
-        return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+        ClassUnit ollirClass = ollirBuilder.getOllirClass();
+
+        // The OLLIR code is only needed to print or cache it, so it is printed from the class on demand
+        return new OllirResult(semanticsResult, ollirClass, () -> new OllirPrinter(ollirClass).build(),
+                Collections.emptyList());
     }
 
     @Override
@@ -59,15 +67,30 @@ public class Optimizer implements JmmOptimization {
                 .equals("-1");
 
         if (optimizeFlag) {
-            do {
-                dataFlowAnalysis.calcInOut();
-            } while (dataFlowAnalysis.eliminateDeadVars());
+            int unrollFactor = Integer.parseInt(ollirResult.getConfig()
+                    .getOrDefault("unrollFactor", String.valueOf(LoopUnrolling.DEFAULT_FACTOR)));
+            // Unrolling is opt-in: plain -o keeps the loops, and --unroll without a budget gets the default one
+            int defaultBudget = ollirResult.getConfig().containsKey("unrollFactor") ? LoopUnrolling.DEFAULT_BUDGET : 0;
+            int unrollBudget = Integer.parseInt(ollirResult.getConfig()
+                    .getOrDefault("unrollBudget", String.valueOf(defaultBudget)));
+            CompilationStats.run(PipelineStage.SSA_OPTIMIZATION, () -> {
+                dataFlowAnalysis.propagateConstants();
+                dataFlowAnalysis.numberValues();
+                dataFlowAnalysis.hoistLoopInvariants();
+                dataFlowAnalysis.reduceStrength();
+                dataFlowAnalysis.unrollLoops(unrollFactor, unrollBudget);
+            });
+            CompilationStats.run(PipelineStage.DATAFLOW, dataFlowAnalysis::eliminateDeadVars);
         }
 
         if (registerAllocationFlag) {
-            dataFlowAnalysis.calcInOut();
-            dataFlowAnalysis.colorGraph();
-            dataFlowAnalysis.allocateRegisters();
+            int maxK = Integer.parseInt(ollirResult.getConfig().get("registerAllocation"));
+            boolean linearScan = ollirResult
+                    .getConfig()
+                    .getOrDefault("registerAllocator", "graph")
+                    .equals("linear");
+            CompilationStats.run(PipelineStage.REGISTER_ALLOCATION,
+                    () -> dataFlowAnalysis.allocateRegisters(maxK, linearScan));
         }
 
         return ollirResult;
@@ -0,0 +1,97 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import java.util.Arrays;
+
+/**
+ * Set of small non-negative integers (e.g. densely numbered variables), stored as the bits of a {@code long[]} that
+ * grows as needed. The set operations update the set in place and report whether it changed.
+ */
+public class BitVector {
+    private long[] words;
+
+    public BitVector() {
+        this.words = new long[1];
+    }
+
+    public BitVector(int capacity) {
+        this.words = new long[Math.max(1, (capacity + 63) >>> 6)];
+    }
+
+    private void ensureWords(int count) {
+        if (count > words.length) {
+            words = Arrays.copyOf(words, Math.max(count, words.length * 2));
+        }
+    }
+
+    public void set(int bit) {
+        ensureWords((bit >>> 6) + 1);
+        words[bit >>> 6] |= 1L << bit;
+    }
+
+    public void clear(int bit) {
+        int word = bit >>> 6;
+        if (word < words.length) words[word] &= ~(1L << bit);
+    }
+
+    public boolean get(int bit) {
+        int word = bit >>> 6;
+        return word < words.length && (words[word] & (1L << bit)) != 0;
+    }
+
+    /**
+     * this = this ∪ other
+     *
+     * @return whether this set changed
+     */
+    public boolean or(BitVector other) {
+        ensureWords(other.words.length);
+
+        long changed = 0;
+        for (int i = 0; i < other.words.length; i++) {
+            long word = words[i] | other.words[i];
+            changed |= word ^ words[i];
+            words[i] = word;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * this = this ∪ (included - excluded)
+     *
+     * @return whether this set changed
+     */
+    public boolean orAndNot(BitVector included, BitVector excluded) {
+        ensureWords(included.words.length);
+
+        long changed = 0;
+        for (int i = 0; i < included.words.length; i++) {
+            long excludedWord = i < excluded.words.length ? excluded.words[i] : 0;
+            long word = words[i] | (included.words[i] & ~excludedWord);
+            changed |= word ^ words[i];
+            words[i] = word;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * @return the first bit set at or after {@code from}, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        int word = from >>> 6;
+        if (word >= words.length) return -1;
+
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == words.length) return -1;
+            bits = words[word];
+        }
+    }
+
+    public boolean isEmpty() {
+        for (long word: words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+}
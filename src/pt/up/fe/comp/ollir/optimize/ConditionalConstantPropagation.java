@@ -0,0 +1,378 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.ollir.OllirUtils;
+
+import java.util.*;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over the SSA form of a method. Only the edges of the CFG
+ * that can be taken are followed, so a variable assigned different values on a branch that is never taken, or on the
+ * first iteration of a loop, can still be a constant. The uses of the constants are replaced by literals, the branches
+ * with constant conditions become gotos or are removed, and the instructions that are never reached are removed.
+ */
+public class ConditionalConstantPropagation {
+
+    private final Method method;
+    private final SsaForm ssaForm;
+
+    // A variable that is not in the map has not been given a value yet
+    private final Map<String, LatticeValue> values = new HashMap<>();
+    private final Set<Edge> executableEdges = new HashSet<>();
+    private final Set<Node> executableNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Edge> flowWorklist = new ArrayDeque<>();
+    private final Deque<Object> ssaWorklist = new ArrayDeque<>();
+    private Map<Instruction, Integer> instructionIndexes;
+    private boolean changed;
+
+    /**
+     * A value of the lattice of each variable: unknown (not yet assigned), a constant, or overdefined (not a constant).
+     */
+    private record LatticeValue(boolean overdefined, Integer constant) {
+        static final LatticeValue UNKNOWN = new LatticeValue(false, null);
+        static final LatticeValue OVERDEFINED = new LatticeValue(true, null);
+
+        static LatticeValue of(int constant) {
+            return new LatticeValue(false, constant);
+        }
+
+        boolean isConstant() {
+            return constant != null;
+        }
+
+        LatticeValue meet(LatticeValue other) {
+            if (this.equals(UNKNOWN)) return other;
+            if (other.equals(UNKNOWN)) return this;
+            return this.equals(other) ? this : OVERDEFINED;
+        }
+    }
+
+    /**
+     * Edges are compared by the identity of their nodes, as nodes do not override equals.
+     */
+    private record Edge(Node from, Node to) {
+    }
+
+    public ConditionalConstantPropagation(Method method) {
+        this.method = method;
+        this.ssaForm = new SsaForm(method);
+    }
+
+    /**
+     * @return whether the method changed
+     */
+    public boolean run() {
+        if (!ssaForm.construct()) return false;
+
+        instructionIndexes = new IdentityHashMap<>();
+        for (int index = 0; index < method.getInstructions().size(); index++) {
+            instructionIndexes.put(method.getInstructions().get(index), index);
+        }
+
+        propagate();
+        transform();
+        return changed;
+    }
+
+    private void propagate() {
+        Node begin = method.getBeginNode();
+        executableNodes.add(begin);
+        for (Node succ: begin.getSuccessors()) {
+            flowWorklist.add(new Edge(begin, succ));
+        }
+
+        while (!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+            while (!flowWorklist.isEmpty()) {
+                Edge edge = flowWorklist.poll();
+                if (!executableEdges.add(edge)) continue;
+
+                Node node = edge.to();
+                for (Phi phi: ssaForm.getPhis(node)) {
+                    evaluate(phi);
+                }
+                // The instruction itself only needs to be evaluated again when its operands change
+                if (executableNodes.add(node)) evaluate(node);
+            }
+
+            while (!ssaWorklist.isEmpty()) {
+                Object use = ssaWorklist.poll();
+                if (use instanceof Phi phi) {
+                    if (executableNodes.contains(phi.getNode())) evaluate(phi);
+                } else if (executableNodes.contains((Node) use)) {
+                    evaluate((Node) use);
+                }
+            }
+        }
+    }
+
+    private void evaluate(Phi phi) {
+        LatticeValue value = LatticeValue.UNKNOWN;
+        for (Map.Entry<Node, Element> argument: phi.getArguments().entrySet()) {
+            if (executableEdges.contains(new Edge(argument.getKey(), phi.getNode()))) {
+                value = value.meet(valueOf(argument.getValue()));
+            }
+        }
+        setValue(phi.getResult(), value);
+    }
+
+    private void evaluate(Node node) {
+        if (node instanceof CondBranchInstruction branch) {
+            LatticeValue condition = evaluate(branch.getCondition());
+            if (condition.overdefined()) {
+                markSuccessors(branch);
+            } else if (condition.isConstant()) {
+                markEdge(branch, condition.constant() != 0 ? getTarget(branch) : getNext(branch));
+            }
+            return;
+        }
+
+        if (node instanceof AssignInstruction assign && isDefinition(assign)) {
+            setValue(((Operand) assign.getDest()).getName(), evaluate(assign.getRhs()));
+        }
+
+        // A return also falls through to the next instruction in the CFG, but never really does
+        if (node instanceof ReturnInstruction) {
+            markEdge(node, method.getEndNode());
+        } else {
+            markSuccessors(node);
+        }
+    }
+
+    private boolean isDefinition(AssignInstruction assign) {
+        return assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)
+                && ssaForm.getDefinition(dest.getName()) == assign;
+    }
+
+    private LatticeValue evaluate(Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            return valueOf(singleOp.getSingleOperand());
+        }
+
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            LatticeValue operand = valueOf(unaryOp.getOperand());
+            if (!operand.isConstant()) return operand;
+            if (unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+                return LatticeValue.of(operand.constant() == 0 ? 1 : 0);
+            }
+            return LatticeValue.OVERDEFINED;
+        }
+
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            LatticeValue left = valueOf(binaryOp.getLeftOperand());
+            LatticeValue right = valueOf(binaryOp.getRightOperand());
+            if (left.overdefined() || right.overdefined()) return LatticeValue.OVERDEFINED;
+            if (!left.isConstant() || !right.isConstant()) return LatticeValue.UNKNOWN;
+            return fold(binaryOp.getOperation().getOpType(), left.constant(), right.constant());
+        }
+
+        // Calls, fields and array elements are never constants
+        return LatticeValue.OVERDEFINED;
+    }
+
+    private static LatticeValue fold(OperationType operationType, int left, int right) {
+        return switch (operationType) {
+            case ADD -> LatticeValue.of(left + right);
+            case SUB -> LatticeValue.of(left - right);
+            case MUL -> LatticeValue.of(left * right);
+            // The division by zero is left to be thrown when the program runs
+            case DIV -> right == 0 ? LatticeValue.OVERDEFINED : LatticeValue.of(left / right);
+            case ANDB -> LatticeValue.of(left != 0 && right != 0 ? 1 : 0);
+            case ORB -> LatticeValue.of(left != 0 || right != 0 ? 1 : 0);
+            case LTH -> LatticeValue.of(left < right ? 1 : 0);
+            case LTE -> LatticeValue.of(left <= right ? 1 : 0);
+            case GTH -> LatticeValue.of(left > right ? 1 : 0);
+            case GTE -> LatticeValue.of(left >= right ? 1 : 0);
+            case EQ -> LatticeValue.of(left == right ? 1 : 0);
+            case NEQ -> LatticeValue.of(left != right ? 1 : 0);
+            default -> LatticeValue.OVERDEFINED;
+        };
+    }
+
+    private static boolean isInteger(Element element) {
+        ElementType type = element.getType().getTypeOfElement();
+        return type == ElementType.INT32 || type == ElementType.BOOLEAN;
+    }
+
+    private LatticeValue valueOf(Element element) {
+        if (!isInteger(element) || element instanceof ArrayOperand) return LatticeValue.OVERDEFINED;
+
+        if (element instanceof LiteralElement literal) {
+            try {
+                return LatticeValue.of(Integer.parseInt(literal.getLiteral()));
+            } catch (NumberFormatException e) {
+                return LatticeValue.OVERDEFINED;
+            }
+        }
+
+        String name = ((Operand) element).getName();
+        // The parameters and the variables that are not renamed have their values from outside
+        if (ssaForm.getDefinition(name) == null && ssaForm.getPhiDefinition(name) == null) {
+            return LatticeValue.OVERDEFINED;
+        }
+        return values.getOrDefault(name, LatticeValue.UNKNOWN);
+    }
+
+    private void setValue(String name, LatticeValue value) {
+        LatticeValue oldValue = values.getOrDefault(name, LatticeValue.UNKNOWN);
+        // Values only go down the lattice, so that the propagation ends
+        LatticeValue newValue = oldValue.meet(value);
+        if (newValue.equals(oldValue)) return;
+
+        values.put(name, newValue);
+        ssaWorklist.addAll(ssaForm.getInstructionUses(name));
+        ssaWorklist.addAll(ssaForm.getPhiUses(name));
+    }
+
+    private void markEdge(Node from, Node to) {
+        if (to != null) flowWorklist.add(new Edge(from, to));
+    }
+
+    private void markSuccessors(Node node) {
+        for (Node succ: node.getSuccessors()) {
+            markEdge(node, succ);
+        }
+    }
+
+    private Instruction getTarget(CondBranchInstruction branch) {
+        return method.getLabels().get(branch.getLabel());
+    }
+
+    private Instruction getNext(Instruction instruction) {
+        int index = instructionIndexes.get(instruction) + 1;
+        return index < method.getInstructions().size() ? method.getInstructions().get(index) : null;
+    }
+
+    private void transform() {
+        Set<Instruction> unreachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<CondBranchInstruction, Boolean> constantBranches = new IdentityHashMap<>();
+        Map<AssignInstruction, LiteralElement> constantAssignments = new IdentityHashMap<>();
+
+        for (Instruction instruction: method.getInstructions()) {
+            if (!executableNodes.contains(instruction)) {
+                unreachable.add(instruction);
+                continue;
+            }
+
+            replaceConstantUses(instruction);
+
+            if (instruction instanceof CondBranchInstruction branch) {
+                LatticeValue condition = evaluate(branch.getCondition());
+                if (condition.isConstant()) constantBranches.put(branch, condition.constant() != 0);
+            } else if (instruction instanceof AssignInstruction assign && isFoldable(assign.getRhs())) {
+                // A value stored to an array element has no version of its own, but its operands can be constants
+                LatticeValue value = LatticeValue.UNKNOWN;
+                if (isDefinition(assign)) {
+                    value = values.getOrDefault(((Operand) assign.getDest()).getName(), LatticeValue.UNKNOWN);
+                } else if (assign.getDest() instanceof ArrayOperand) {
+                    value = evaluate(assign.getRhs());
+                }
+                if (value.isConstant()) {
+                    changed = true;
+                    constantAssignments.put(assign, new LiteralElement(value.constant().toString(),
+                            assign.getTypeOfAssign()));
+                }
+            }
+        }
+
+        // The copies of the phis are only needed on the edges that are taken
+        for (List<Phi> nodePhis: ssaForm.getAllPhis()) {
+            nodePhis.removeIf(phi -> !executableNodes.contains(phi.getNode()));
+            for (Phi phi: nodePhis) {
+                // The arguments stay variables, which can share the name of the result instead of being copied to it
+                phi.getArguments().keySet().removeIf(pred -> !executableEdges.contains(new Edge(pred, phi.getNode())));
+            }
+        }
+        ssaForm.destruct();
+
+        for (Map.Entry<AssignInstruction, LiteralElement> entry: constantAssignments.entrySet()) {
+            AssignInstruction assign = entry.getKey();
+            replaceInstruction(assign, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(entry.getValue())));
+        }
+
+        for (Map.Entry<CondBranchInstruction, Boolean> entry: constantBranches.entrySet()) {
+            CondBranchInstruction branch = entry.getKey();
+            if (entry.getValue()) {
+                // Read after the SSA form is left, which can make the branch jump to its copies first
+                replaceInstruction(branch, new GotoInstruction(branch.getLabel()));
+            } else {
+                int index = indexOf(branch);
+                method.getInstructions().remove(index);
+                moveLabels(branch, method.getInstructions().get(index));
+            }
+            changed = true;
+        }
+
+        if (!unreachable.isEmpty()) {
+            method.getInstructions().removeIf(unreachable::contains);
+            method.getLabels().values().removeIf(unreachable::contains);
+            changed = true;
+        }
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+        OllirUtils.rebuildCFG(method);
+    }
+
+    private static boolean isFoldable(Instruction instruction) {
+        return instruction instanceof BinaryOpInstruction || instruction instanceof UnaryOpInstruction;
+    }
+
+    private Element constantOrSelf(Element element) {
+        if (!(element instanceof Operand operand) || element instanceof ArrayOperand || !isInteger(element)) {
+            return element;
+        }
+
+        LatticeValue value = values.get(operand.getName());
+        if (value == null || !value.isConstant()) return element;
+
+        changed = true;
+        return new LiteralElement(value.constant().toString(), operand.getType());
+    }
+
+    /**
+     * Replaces the operands that are constants with literals, except for the indexes of array elements, which are
+     * always read from a register.
+     */
+    private void replaceConstantUses(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            replaceConstantUses(assign.getRhs());
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            singleOp.setSingleOperand(constantOrSelf(singleOp.getSingleOperand()));
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            unaryOp.setOperand(constantOrSelf(unaryOp.getOperand()));
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            binaryOp.setLeftOperand(constantOrSelf(binaryOp.getLeftOperand()));
+            binaryOp.setRightOperand(constantOrSelf(binaryOp.getRightOperand()));
+        } else if (instruction instanceof ReturnInstruction returnInstruction) {
+            if (returnInstruction.hasReturnValue()) {
+                returnInstruction.setOperand(constantOrSelf(returnInstruction.getOperand()));
+            }
+        } else if (instruction instanceof CallInstruction call) {
+            if (call.getListOfOperands() != null) call.getListOfOperands().replaceAll(this::constantOrSelf);
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            putField.setThirdOperand(constantOrSelf(putField.getThirdOperand()));
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            replaceConstantUses(branch.getCondition());
+        }
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+
+    private void replaceInstruction(Instruction instruction, Instruction replacement) {
+        method.getInstructions().set(indexOf(instruction), replacement);
+        moveLabels(instruction, replacement);
+    }
+
+    private void moveLabels(Instruction from, Instruction to) {
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (label.getValue() == from) label.setValue(to);
+        }
+    }
+}
@@ -1,73 +1,87 @@
 package pt.up.fe.comp.ollir.optimize;
 
-import org.specs.comp.ollir.Descriptor;
-import org.specs.comp.ollir.Instruction;
-import org.specs.comp.ollir.Method;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.stats.CompilationStats;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Runs the dataflow optimizations on every method of a class. Each method only touches its own instructions and
+ * variables, so the methods are analysed in parallel, each one iterating to its own fixpoint.
+ */
 public class DataFlowAnalysis {
 
-    private final OllirResult ollirResult;
-    private ArrayList<MethodDataFlowAnalysis> methodFlowList;
+    private final List<MethodDataFlowAnalysis> methodFlowList;
 
     public DataFlowAnalysis(OllirResult ollirResult) {
-        this.ollirResult = ollirResult;
+        this.methodFlowList = ollirResult.getOllirClass().getMethods().stream()
+                .map(method -> new MethodDataFlowAnalysis(method, ollirResult))
+                .collect(Collectors.toList());
     }
 
-    public void calcInOut() {
-        ollirResult.getOllirClass().buildCFGs();
-        ArrayList<Method> methods = ollirResult.getOllirClass().getMethods();
-        this.methodFlowList = new ArrayList<>();
-
-        for (Method method: methods) {
-            MethodDataFlowAnalysis methodFlow = new MethodDataFlowAnalysis(method, ollirResult);
-            methodFlow.calcInOut();
-            methodFlowList.add(methodFlow);
-        }
+    /**
+     * Propagates the constants of every method over its SSA form, removing the branches that are never taken.
+     */
+    public void propagateConstants() {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(
+                methodFlow -> new ConditionalConstantPropagation(methodFlow.getMethod()).run()));
     }
 
-    public void buildInterferenceGraph() {
-        for (MethodDataFlowAnalysis methodFlow: methodFlowList) {
-            methodFlow.buildInterferenceGraph();
-        }
+    /**
+     * Reuses the values already computed on the paths to each instruction, leaving the assignments that computed them
+     * again to be eliminated as dead.
+     */
+    public void numberValues() {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(
+                methodFlow -> new GlobalValueNumbering(methodFlow.getMethod()).run()));
     }
 
-    public void colorGraph() {
-        for (MethodDataFlowAnalysis methodFlow: methodFlowList) {
-            methodFlow.buildInterferenceGraph();
-            var num = ollirResult.getConfig().get("registerAllocation");
-
-            methodFlow.colorInterferenceGraph(Integer.parseInt(num));
-        }
+    /**
+     * Moves the computations that give the same value on every iteration of a loop to before the loop.
+     */
+    public void hoistLoopInvariants() {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(
+                methodFlow -> new LoopInvariantCodeMotion(methodFlow.getMethod()).run()));
     }
 
-    public void allocateRegisters() {
-        for (MethodDataFlowAnalysis methodFlow: methodFlowList) {
-            HashMap<String, Descriptor> varTable = methodFlow.getMethod().getVarTable();
-            for (RegisterNode node: methodFlow.getInterferenceGraph().getLocalVars()) {
-                varTable.get(node.getName()).setVirtualReg(node.getRegister());
-            }
-            for (RegisterNode node: methodFlow.getInterferenceGraph().getParams()) {
-                varTable.get(node.getName()).setVirtualReg(node.getRegister());
-            }
+    /**
+     * Replaces the multiplications of induction variables in loops with additions, and removes the induction variables
+     * that are then only read to update themselves.
+     */
+    public void reduceStrength() {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(
+                methodFlow -> new StrengthReduction(methodFlow.getMethod()).run()));
+    }
 
-            if (varTable.get("this") != null) {
-                varTable.get("this").setVirtualReg(0);
+    /**
+     * Unrolls the innermost loops that compare an induction variable with a value they do not change, and propagates the
+     * constants again over the copies of their bodies.
+     *
+     * @param factor the number of copies of the body of the loops with an unknown number of iterations
+     * @param budget the number of instructions each method can grow by
+     */
+    public void unrollLoops(int factor, int budget) {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(methodFlow -> {
+            if (new LoopUnrolling(methodFlow.getMethod(), factor, budget).run()) {
+                new ConditionalConstantPropagation(methodFlow.getMethod()).run();
             }
-        }
-
+        }));
     }
 
-    public boolean eliminateDeadVars() {
-        boolean hasDeadVars = false;
-        for (MethodDataFlowAnalysis methodFlow: methodFlowList) {
-            hasDeadVars = methodFlow.eliminateDeadVars() || hasDeadVars;
-        }
-        return hasDeadVars;
+    public void eliminateDeadVars() {
+        methodFlowList.parallelStream().forEach(CompilationStats.propagate(methodFlow -> {
+            methodFlow.eliminateAllDeadVars();
+            methodFlow.removeJumpsToNext();
+        }));
     }
 
+    /**
+     * @param maxK       the maximum number of registers of each method, or 0 to use as few as possible
+     * @param linearScan whether to use the linear scan allocator instead of graph coloring
+     */
+    public void allocateRegisters(int maxK, boolean linearScan) {
+        methodFlowList.parallelStream()
+                .forEach(CompilationStats.propagate(methodFlow -> methodFlow.allocateRegisters(maxK, linearScan)));
+    }
 }
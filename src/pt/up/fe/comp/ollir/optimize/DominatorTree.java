@@ -0,0 +1,171 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Node;
+
+import java.util.*;
+
+/**
+ * Dominator tree of the CFG of a method, with the nodes reachable from its beginning, computed with the iterative
+ * algorithm of Cooper, Harvey and Kennedy. Each instruction is a node of the CFG, so there are no basic blocks.
+ */
+public class DominatorTree {
+
+    private final List<Node> order;
+    private final Map<Node, Integer> indexes;
+    private final int[] idom;
+    private final List<List<Node>> children;
+    private List<Set<Node>> frontiers;
+
+    /**
+     * The CFG of the method must be built, with no duplicate edges.
+     */
+    public DominatorTree(Method method) {
+        this.order = reversePostorder(method);
+        this.indexes = new IdentityHashMap<>();
+        for (int index = 0; index < order.size(); index++) {
+            indexes.put(order.get(index), index);
+        }
+
+        this.idom = new int[order.size()];
+        Arrays.fill(idom, -1);
+        if (!order.isEmpty()) idom[0] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int index = 1; index < order.size(); index++) {
+                int newIdom = -1;
+                for (Node pred: order.get(index).getPredecessors()) {
+                    Integer predIndex = indexes.get(pred);
+                    if (predIndex == null || idom[predIndex] == -1) continue;
+                    newIdom = newIdom == -1 ? predIndex : intersect(predIndex, newIdom);
+                }
+                if (idom[index] != newIdom) {
+                    idom[index] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        this.children = new ArrayList<>();
+        for (int index = 0; index < order.size(); index++) {
+            children.add(new ArrayList<>());
+        }
+        for (int index = 1; index < order.size(); index++) {
+            children.get(idom[index]).add(order.get(index));
+        }
+    }
+
+    private static List<Node> reversePostorder(Method method) {
+        // The CFG can still point to instructions removed from the method
+        Set<Node> instructions = Collections.newSetFromMap(new IdentityHashMap<>());
+        instructions.addAll(method.getInstructions());
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Node> postorder = new ArrayList<>();
+
+        Deque<Node> path = new ArrayDeque<>();
+        Deque<Iterator<Node>> pathSuccessors = new ArrayDeque<>();
+        visited.add(method.getBeginNode());
+        path.push(method.getBeginNode());
+        pathSuccessors.push(method.getBeginNode().getSuccessors().iterator());
+
+        while (!path.isEmpty()) {
+            Iterator<Node> successors = pathSuccessors.peek();
+            if (!successors.hasNext()) {
+                pathSuccessors.pop();
+                postorder.add(path.pop());
+                continue;
+            }
+
+            Node succ = successors.next();
+            if (succ == null || visited.contains(succ)) continue;
+            if (succ instanceof Instruction && !instructions.contains(succ)) continue;
+
+            visited.add(succ);
+            path.push(succ);
+            pathSuccessors.push(succ.getSuccessors().iterator());
+        }
+
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (a > b) a = idom[a];
+            while (b > a) b = idom[b];
+        }
+        return a;
+    }
+
+    /**
+     * @return the nodes reachable from the beginning of the method, in reverse postorder, starting with the begin node
+     */
+    public List<Node> getOrder() {
+        return order;
+    }
+
+    public boolean isReachable(Node node) {
+        return indexes.containsKey(node);
+    }
+
+    /**
+     * @return the position of the node in reverse postorder, or null if it is not reachable
+     */
+    public Integer getIndex(Node node) {
+        return indexes.get(node);
+    }
+
+    /**
+     * @return the immediate dominator of the node, or null for the begin node
+     */
+    public Node getImmediateDominator(Node node) {
+        int index = indexes.get(node);
+        return index == 0 ? null : order.get(idom[index]);
+    }
+
+    public List<Node> getChildren(Node node) {
+        return children.get(indexes.get(node));
+    }
+
+    public boolean dominates(Node dominator, Node node) {
+        int dominatorIndex = indexes.get(dominator);
+        int index = indexes.get(node);
+        // A dominator always comes first in reverse postorder
+        while (index > dominatorIndex) {
+            index = idom[index];
+        }
+        return index == dominatorIndex;
+    }
+
+    /**
+     * @return the dominance frontier of the node: the nodes where the paths from it meet the paths it does not dominate
+     */
+    public Set<Node> getDominanceFrontier(Node node) {
+        if (frontiers == null) calcDominanceFrontiers();
+        return frontiers.get(indexes.get(node));
+    }
+
+    private void calcDominanceFrontiers() {
+        frontiers = new ArrayList<>();
+        for (int index = 0; index < order.size(); index++) {
+            frontiers.add(Collections.newSetFromMap(new LinkedHashMap<>()));
+        }
+
+        for (int index = 0; index < order.size(); index++) {
+            Node node = order.get(index);
+            if (node.getPredecessors().size() < 2) continue;
+
+            for (Node pred: node.getPredecessors()) {
+                Integer runner = indexes.get(pred);
+                if (runner == null) continue;
+                while (runner != idom[index]) {
+                    frontiers.get(runner).add(node);
+                    runner = idom[runner];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Dominator-based value numbering (Briggs, Cooper and Simpson) over the SSA form of a method. An expression computed
+ * again where an equal one was already computed, on an instruction that dominates it, is redundant: the uses of its
+ * result read the earlier result instead, and the redundant assignment is left dead for the dead code elimination.
+ * The versions read by phis are not replaced, as a phi joining versions of different variables needs copies on its
+ * edges, which cost more than computing the value again.
+ * <p>
+ * Arithmetic and array lengths only depend on their operands. Array elements and fields also depend on the memory,
+ * which is numbered with a generation that changes on every store and call, and on every node with more than one
+ * predecessor, as the stores on the other paths are not seen when walking the dominator tree.
+ */
+public class GlobalValueNumbering {
+
+    private final Method method;
+    private final SsaForm ssaForm;
+
+    // A name with the same value as each version, which may be a literal, as literals never start like identifiers
+    private final Map<String, String> valueNumbers = new HashMap<>();
+    // The earlier version that is read instead of each redundant one
+    private final Map<String, String> replacements = new HashMap<>();
+    private final Map<Expression, String> available = new HashMap<>();
+    private int generations = 0;
+    private boolean changed;
+
+    private record Expression(String operation, List<String> operands) {
+    }
+
+    /**
+     * The generations of the array elements and of the fields at some point of the method.
+     */
+    private record Memory(int arrays, int fields) {
+    }
+
+    public GlobalValueNumbering(Method method) {
+        this.method = method;
+        this.ssaForm = new SsaForm(method);
+    }
+
+    /**
+     * @return whether the method changed
+     */
+    public boolean run() {
+        if (!ssaForm.construct()) return false;
+
+        DominatorTree dominatorTree = ssaForm.getDominatorTree();
+        Map<Node, List<Expression>> added = new IdentityHashMap<>();
+        Map<Node, Memory> memoryAfter = new IdentityHashMap<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(method.getBeginNode());
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+
+            // Leaving the subtree of the node, where its expressions are no longer computed on every path
+            List<Expression> expressions = added.remove(node);
+            if (expressions != null) {
+                expressions.forEach(available::remove);
+                continue;
+            }
+
+            expressions = new ArrayList<>();
+            Memory memory = memoryBefore(node, memoryAfter);
+            if (node instanceof Instruction instruction) memory = number(instruction, memory, expressions);
+            memoryAfter.put(node, memory);
+
+            added.put(node, expressions);
+            stack.push(node);
+            for (Node child: dominatorTree.getChildren(node)) {
+                stack.push(child);
+            }
+        }
+
+        ssaForm.destruct();
+        return changed;
+    }
+
+    /**
+     * A node with a single predecessor is only reached from it, which is also its immediate dominator, so it sees the
+     * same memory.
+     */
+    private Memory memoryBefore(Node node, Map<Node, Memory> memoryAfter) {
+        Set<Node> predecessors = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node pred: node.getPredecessors()) {
+            if (ssaForm.getDominatorTree().isReachable(pred)) predecessors.add(pred);
+        }
+
+        if (predecessors.size() == 1) return memoryAfter.get(predecessors.iterator().next());
+        return new Memory(++generations, ++generations);
+    }
+
+    private Memory number(Instruction instruction, Memory memory, List<Expression> expressions) {
+        for (Operand use: ssaForm.getUses(instruction)) {
+            replace(use);
+        }
+
+        Instruction operation = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+        Expression expression = getExpression(operation, memory);
+        if (operation instanceof CallInstruction call && isInvocation(call)) {
+            memory = new Memory(++generations, ++generations);
+        }
+
+        if (instruction instanceof AssignInstruction assign) {
+            if (assign.getDest() instanceof ArrayOperand) return new Memory(++generations, memory.fields());
+
+            Operand dest = ssaForm.getDefinedOperand(assign);
+            if (dest != null) number(dest.getName(), assign.getRhs(), expression, expressions);
+        } else if (instruction instanceof PutFieldInstruction) {
+            return new Memory(memory.arrays(), ++generations);
+        }
+        return memory;
+    }
+
+    private void number(String version, Instruction rhs, Expression expression, List<Expression> expressions) {
+        if (rhs instanceof SingleOpInstruction singleOp && !(singleOp.getSingleOperand() instanceof ArrayOperand)) {
+            // A copy has the value of its operand, but its uses are left to the register allocation to coalesce
+            valueNumbers.put(version, valueOf(singleOp.getSingleOperand()));
+            return;
+        }
+        if (expression == null) return;
+
+        String previous = available.get(expression);
+        if (previous == null) {
+            available.put(expression, version);
+            expressions.add(expression);
+            return;
+        }
+
+        valueNumbers.put(version, valueOf(previous));
+        // The assignment stays for the phis anyway, so reading the earlier version would only keep it alive for longer
+        if (!ssaForm.getPhiUses(version).isEmpty()) return;
+        replacements.put(version, previous);
+        changed = true;
+    }
+
+    /**
+     * @return the expression computed by the instruction, or null if it can not be reused
+     */
+    private Expression getExpression(Instruction instruction, Memory memory) {
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            OperationType operationType = binaryOp.getOperation().getOpType();
+            String left = valueOf(binaryOp.getLeftOperand());
+            String right = valueOf(binaryOp.getRightOperand());
+            if (isCommutative(operationType) && left.compareTo(right) > 0) {
+                return new Expression(operationType.name(), List.of(right, left));
+            }
+            return new Expression(operationType.name(), List.of(left, right));
+        }
+
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return new Expression(unaryOp.getOperation().getOpType().name(), List.of(valueOf(unaryOp.getOperand())));
+        }
+
+        if (instruction instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof ArrayOperand array) {
+            List<String> operands = new ArrayList<>();
+            operands.add(valueOf(array.getName()));
+            for (Element index: array.getIndexOperands()) {
+                operands.add(valueOf(index));
+            }
+            operands.add(String.valueOf(memory.arrays()));
+            return new Expression("ARRAYLOAD", operands);
+        }
+
+        if (instruction instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            return new Expression("ARRAYLENGTH", List.of(valueOf(call.getFirstArg())));
+        }
+
+        if (instruction instanceof GetFieldInstruction getField) {
+            return new Expression("GETFIELD", List.of(valueOf(getField.getFirstOperand()),
+                    ((Operand) getField.getSecondOperand()).getName(), String.valueOf(memory.fields())));
+        }
+
+        return null;
+    }
+
+    private static boolean isCommutative(OperationType operationType) {
+        return switch (operationType) {
+            case ADD, MUL, AND, OR, ANDB, ORB, EQ, NEQ, XOR -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return whether the call runs a method, which can store to any array or field
+     */
+    private static boolean isInvocation(CallInstruction call) {
+        return switch (call.getInvocationType()) {
+            case invokevirtual, invokeinterface, invokespecial, invokestatic -> true;
+            default -> false;
+        };
+    }
+
+    private String valueOf(Element element) {
+        if (element instanceof LiteralElement literal) return literal.getLiteral();
+        return valueOf(((Operand) element).getName());
+    }
+
+    private String valueOf(String name) {
+        return valueNumbers.getOrDefault(name, name);
+    }
+
+    private void replace(Operand operand) {
+        String replacement = replacements.get(operand.getName());
+        if (replacement != null) operand.setName(replacement);
+    }
+}
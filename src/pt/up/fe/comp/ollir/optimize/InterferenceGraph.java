@@ -1,39 +1,99 @@
 package pt.up.fe.comp.ollir.optimize;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
+/**
+ * Interference graph of the local variables and parameters of a method. Edges are kept both in a triangular bit matrix,
+ * to check and avoid duplicate edges in constant time, and in the adjacency list of each node, to visit the neighbors.
+ * The parameters are pre-colored: they keep their registers, but the local variables that do not interfere with them
+ * can share those.
+ */
 public class InterferenceGraph {
 
-    private final Set<RegisterNode> localVars;
-    private final Set<RegisterNode> params;
+    private final List<RegisterNode> localVars;
+    private final List<RegisterNode> params;
+    // Bit (i * (i - 1) / 2 + j) is set when the nodes i > j interfere, numbering the parameters after the local variables
+    private final long[] matrix;
 
-    public InterferenceGraph(Set<String> nodes, Set<String> params) {
-        this.localVars = new HashSet<>();
-        this.params = new HashSet<>();
+    public InterferenceGraph(Collection<String> nodes, Collection<String> params) {
+        this.localVars = new ArrayList<>();
+        this.params = new ArrayList<>();
         for (String node: nodes) {
-            this.localVars.add(new RegisterNode(node));
+            this.localVars.add(new RegisterNode(node, this.localVars.size()));
         }
         for (String node: params) {
-            this.params.add(new RegisterNode(node));
+            this.params.add(new RegisterNode(node, this.localVars.size() + this.params.size()));
         }
+
+        long size = localVars.size() + this.params.size();
+        this.matrix = new long[(int) ((size * (size - 1) / 2 + 63) >>> 6)];
+    }
+
+    private static long matrixBit(RegisterNode r1, RegisterNode r2) {
+        long i = Math.max(r1.getIndex(), r2.getIndex());
+        long j = Math.min(r1.getIndex(), r2.getIndex());
+        return i * (i - 1) / 2 + j;
+    }
+
+    public boolean interferes(RegisterNode r1, RegisterNode r2) {
+        if (r1 == r2) return false;
+
+        long bit = matrixBit(r1, r2);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
     }
 
     public void addEdge(RegisterNode r1, RegisterNode r2) {
+        if (r1 == r2 || interferes(r1, r2)) return;
+
+        long bit = matrixBit(r1, r2);
+        matrix[(int) (bit >>> 6)] |= 1L << bit;
         r1.addEdge(r2);
         r2.addEdge(r1);
     }
 
     public void removeEdge(RegisterNode r1, RegisterNode r2) {
+        if (!interferes(r1, r2)) return;
+
+        long bit = matrixBit(r1, r2);
+        matrix[(int) (bit >>> 6)] &= ~(1L << bit);
         r1.removeEdge(r2);
         r2.removeEdge(r1);
     }
 
-    public Set<RegisterNode> getLocalVars() {
+    /**
+     * Merges the node other into node, which takes its edges and now stands for both variables.
+     */
+    public void coalesce(RegisterNode node, RegisterNode other) {
+        for (RegisterNode neighbor: new ArrayList<>(other.getEdges())) {
+            removeEdge(other, neighbor);
+            addEdge(node, neighbor);
+        }
+
+        node.setSpillCost(node.getSpillCost() + other.getSpillCost());
+        other.setRepresentative(node);
+    }
+
+    /**
+     * @return the local variables, in the order they were given
+     */
+    public List<RegisterNode> getLocalVars() {
         return localVars;
     }
 
-    public Set<RegisterNode> getParams() {
+    /**
+     * @return the local variables that were not coalesced into another one
+     */
+    public List<RegisterNode> getRepresentativeNodes() {
+        return localVars.stream().filter(node -> node.getRepresentative() == node).toList();
+    }
+
+    public boolean isParam(RegisterNode node) {
+        return node.getIndex() >= localVars.size();
+    }
+
+    public List<RegisterNode> getParams() {
         return params;
     }
 
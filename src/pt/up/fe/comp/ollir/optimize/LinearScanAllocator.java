@@ -0,0 +1,92 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import java.util.*;
+
+/**
+ * Linear scan register allocation (Poletto and Sarkar) over the live intervals of the local variables of a method. It
+ * only sorts the intervals and walks them once, so it is much faster than coloring the interference graph of large
+ * methods, at the cost of some more registers.
+ */
+public class LinearScanAllocator {
+
+    private static final Comparator<LiveInterval> BY_END = Comparator.comparingInt(LiveInterval::end)
+            .thenComparingInt(LiveInterval::start)
+            .thenComparing(LiveInterval::variable);
+
+    private final int startReg;
+    private final int maxK;
+    private final Map<String, Integer> registers;
+
+    /**
+     * @param maxK the number of registers from startReg onwards, or 0 to use as many as needed
+     */
+    public LinearScanAllocator(int startReg, int maxK) {
+        this.startReg = startReg;
+        this.maxK = maxK;
+        this.registers = new HashMap<>();
+    }
+
+    /**
+     * @param pinned the variables that keep their registers (the parameters), which are given to the other variables
+     *               once they are no longer live
+     * @return the intervals left without a register, the ones that end last when there are not enough registers
+     */
+    public List<LiveInterval> allocate(List<LiveInterval> intervals, Map<String, Integer> pinned) {
+        List<LiveInterval> sortedIntervals = new ArrayList<>(intervals);
+        sortedIntervals.sort(Comparator.comparingInt(LiveInterval::start).thenComparing(BY_END));
+
+        TreeSet<LiveInterval> active = new TreeSet<>(BY_END);
+        TreeSet<Integer> freeRegisters = new TreeSet<>(pinned.values());
+        int usedRegisters = 0;
+        List<LiveInterval> spilled = new ArrayList<>();
+
+        registers.putAll(pinned);
+        for (LiveInterval interval: sortedIntervals) {
+            if (pinned.containsKey(interval.variable())) freeRegisters.remove(pinned.get(interval.variable()));
+        }
+
+        for (LiveInterval interval: sortedIntervals) {
+            while (!active.isEmpty() && active.first().end() < interval.start()) {
+                freeRegisters.add(registers.get(active.pollFirst().variable()));
+            }
+
+            if (pinned.containsKey(interval.variable())) {
+                active.add(interval);
+                continue;
+            }
+
+            // A copy takes the register of its source when that one is no longer live, so the copy can be left out
+            Integer hint = interval.copyOf() == null ? null : registers.get(interval.copyOf());
+            if (hint != null && freeRegisters.remove(hint)) {
+                registers.put(interval.variable(), hint);
+            } else if (!freeRegisters.isEmpty()) {
+                registers.put(interval.variable(), freeRegisters.pollFirst());
+            } else if (maxK == 0 || usedRegisters < maxK) {
+                registers.put(interval.variable(), startReg + usedRegisters++);
+            } else if (lastUnpinned(active, pinned) != null && lastUnpinned(active, pinned).end() > interval.end()) {
+                LiveInterval last = lastUnpinned(active, pinned);
+                active.remove(last);
+                registers.put(interval.variable(), registers.remove(last.variable()));
+                spilled.add(last);
+            } else {
+                spilled.add(interval);
+                continue;
+            }
+
+            active.add(interval);
+        }
+
+        return spilled;
+    }
+
+    private static LiveInterval lastUnpinned(TreeSet<LiveInterval> active, Map<String, Integer> pinned) {
+        for (LiveInterval interval: active.descendingSet()) {
+            if (!pinned.containsKey(interval.variable())) return interval;
+        }
+        return null;
+    }
+
+    public Map<String, Integer> getRegisters() {
+        return registers;
+    }
+}
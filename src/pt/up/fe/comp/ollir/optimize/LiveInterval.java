@@ -0,0 +1,10 @@
+package pt.up.fe.comp.ollir.optimize;
+
+/**
+ * The positions of a method, in reverse postorder, from the first to the last one where a variable is live. Each node
+ * has two positions: the one where it reads its operands and the one where it writes its result.
+ *
+ * @param copyOf the variable this one is first copied from, or null
+ */
+public record LiveInterval(String variable, int start, int end, String copyOf) {
+}
@@ -0,0 +1,194 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.ollir.OllirUtils;
+
+import java.util.*;
+
+/**
+ * Moves the computations whose operands do not change inside a loop to its preheader, before the header on the only
+ * edge that enters the loop, so that they happen once instead of on every iteration. The generated loops are guarded by
+ * their condition before they are entered, so the preheader only runs when the loop does. Inner loops are handled
+ * first, and what is moved out of them can then be moved out of the loops around them.
+ * <p>
+ * Over the SSA form, a computation is invariant when its operands are assigned outside the loop or by other invariant
+ * computations. Array elements and fields are only invariant in loops that do not store to them or call methods. The
+ * computations that can throw, reading array elements and lengths and dividing, are only moved when they happen on
+ * every iteration before the loop can be left, and the loop calls no methods that could print before they throw.
+ */
+public class LoopInvariantCodeMotion {
+
+    private final Method method;
+    private final SsaForm ssaForm;
+    private DominatorTree dominatorTree;
+
+    // The innermost loop each instruction is moved out of, so far
+    private final Map<Instruction, NaturalLoop> hoisted = new IdentityHashMap<>();
+
+    public LoopInvariantCodeMotion(Method method) {
+        this.method = method;
+        this.ssaForm = new SsaForm(method);
+    }
+
+    /**
+     * @return whether the method changed
+     */
+    public boolean run() {
+        if (!ssaForm.construct()) return false;
+        dominatorTree = ssaForm.getDominatorTree();
+
+        Map<NaturalLoop, Node> preheaders = new IdentityHashMap<>();
+        for (NaturalLoop loop: NaturalLoop.findLoops(dominatorTree)) {
+            Node entry = loop.getPreheaderEntry(method);
+            if (entry == null) continue;
+            preheaders.put(loop, entry);
+            hoist(loop);
+        }
+
+        if (hoisted.isEmpty()) {
+            ssaForm.destruct();
+            return false;
+        }
+
+        // Each instruction goes to the outermost loop it was moved out of, in the order the values are computed
+        Map<NaturalLoop, List<Instruction>> moves = new IdentityHashMap<>();
+        for (Node node: dominatorTree.getOrder()) {
+            NaturalLoop loop = hoisted.get(node);
+            if (loop != null) moves.computeIfAbsent(loop, key -> new ArrayList<>()).add((Instruction) node);
+        }
+
+        // The copies of the phis are placed on the edges first, which does not change the instructions around them
+        ssaForm.destruct();
+
+        // The jumps to an instruction that is moved go to the next one that stays instead
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (hoisted.containsKey(label.getValue())) label.setValue(getNextStaying(label.getValue()));
+        }
+        Map<NaturalLoop, Instruction> anchors = new IdentityHashMap<>();
+        for (NaturalLoop loop: moves.keySet()) {
+            anchors.put(loop, getNextStaying((Instruction) loop.getHeader()));
+        }
+        method.getInstructions().removeIf(hoisted::containsKey);
+        for (Map.Entry<NaturalLoop, List<Instruction>> entry: moves.entrySet()) {
+            NaturalLoop loop = entry.getKey();
+            loop.insertPreheader(method, preheaders.get(loop), anchors.get(loop), entry.getValue());
+        }
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+        OllirUtils.rebuildCFG(method);
+        return true;
+    }
+
+    private void hoist(NaturalLoop loop) {
+        boolean storesArrays = false;
+        boolean storesFields = false;
+        boolean calls = false;
+        for (Node node: loop.getNodes()) {
+            if (node instanceof AssignInstruction assign) {
+                storesArrays |= assign.getDest() instanceof ArrayOperand;
+                calls |= isInvocation(assign.getRhs());
+            }
+            storesFields |= node instanceof PutFieldInstruction;
+            calls |= isInvocation(node);
+        }
+
+        List<Node> exits = loop.getExits();
+        for (Node node: dominatorTree.getOrder()) {
+            if (!loop.contains(node) || !(node instanceof AssignInstruction assign)) continue;
+
+            Operand dest = ssaForm.getDefinedOperand(assign);
+            // A version read by a phi is carried around the loop, and moving it would need copies on the back edge
+            if (dest == null || !ssaForm.getPhiUses(dest.getName()).isEmpty()) continue;
+
+            Instruction rhs = assign.getRhs();
+            if (isArrayLoad(rhs) && (storesArrays || calls)) continue;
+            if (rhs instanceof GetFieldInstruction && (storesFields || calls)) continue;
+            if (!isMovable(rhs) || !isInvariant(assign, loop)) continue;
+
+            if (mayThrow(rhs)) {
+                Node position = getPosition(assign);
+                if (calls || exits.isEmpty() || !exits.stream().allMatch(exit -> dominatorTree.dominates(position, exit))) {
+                    continue;
+                }
+            }
+
+            hoisted.put(assign, loop);
+        }
+    }
+
+    /**
+     * @return the node that stands for where the instruction is now: an instruction moved out of a loop happens right
+     * before its header, so it dominates whatever the header dominates
+     */
+    private Node getPosition(Instruction instruction) {
+        NaturalLoop loop = hoisted.get(instruction);
+        return loop == null ? instruction : loop.getHeader();
+    }
+
+    private boolean isInvariant(AssignInstruction assign, NaturalLoop loop) {
+        for (Operand use: ssaForm.getUses(assign)) {
+            Instruction definition = ssaForm.getDefinition(use.getName());
+            Phi phiDefinition = ssaForm.getPhiDefinition(use.getName());
+
+            if (definition != null && loop.contains(definition) && hoisted.get(definition) != loop) return false;
+            if (phiDefinition != null && loop.contains(phiDefinition.getNode())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies are not moved, as loading a constant or a variable costs as much as loading the copy, which would only
+     * take one more register for the whole loop.
+     */
+    private static boolean isMovable(Instruction instruction) {
+        if (instruction instanceof CallInstruction call) return call.getInvocationType() == CallType.arraylength;
+        return instruction instanceof BinaryOpInstruction || instruction instanceof UnaryOpInstruction
+                || instruction instanceof GetFieldInstruction || isArrayLoad(instruction);
+    }
+
+    private static boolean isArrayLoad(Instruction instruction) {
+        return instruction instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof ArrayOperand;
+    }
+
+    private static boolean mayThrow(Instruction instruction) {
+        if (isArrayLoad(instruction) || instruction instanceof CallInstruction) return true;
+        if (instruction instanceof GetFieldInstruction getField) {
+            return getField.getFirstOperand().getType().getTypeOfElement() != ElementType.THIS;
+        }
+        if (instruction instanceof BinaryOpInstruction binaryOp && binaryOp.getOperation().getOpType() == OperationType.DIV) {
+            return !(binaryOp.getRightOperand() instanceof LiteralElement literal) || literal.getLiteral().equals("0");
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the node calls a method, which can store to any array or field
+     */
+    private static boolean isInvocation(Node node) {
+        if (!(node instanceof CallInstruction call)) return false;
+        return switch (call.getInvocationType()) {
+            case invokevirtual, invokeinterface, invokespecial, invokestatic -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return the first instruction from the given one on that is not moved
+     */
+    private Instruction getNextStaying(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = indexOf(instruction); index < instructions.size(); index++) {
+            if (!hoisted.containsKey(instructions.get(index))) return instructions.get(index);
+        }
+        throw new RuntimeException("No instruction left after a loop in method " + method.getMethodName());
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+}
@@ -0,0 +1,449 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.ollir.OllirUtils;
+
+import java.util.*;
+
+/**
+ * Unrolls the innermost loops whose condition compares a basic induction variable with a value that does not change in
+ * the loop, as in {@code while (i < n)}. The generated loops check their condition after the body, which always runs
+ * once when the loop is reached, so the loop is its body followed by a branch back to it.
+ * <p>
+ * When the variable starts at a constant and is compared with a constant, the number of iterations is known, and the
+ * loop is replaced by that many copies of its body. Otherwise, when the unroll factor is above 1, that many copies are
+ * placed in a loop that only runs while there are enough iterations left for all of them, followed by the original loop
+ * for the iterations that remain. Both are limited by a budget of instructions that each method can grow by.
+ */
+public class LoopUnrolling {
+
+    public static final int DEFAULT_FACTOR = 1;
+    public static final int DEFAULT_BUDGET = 64;
+
+    private static final String VARIABLE_PREFIX = "bound_";
+    private static final Type INT_TYPE = new Type(ElementType.INT32);
+
+    private final Method method;
+    private final int factor;
+    private int budget;
+    private int variables = 0;
+    private int labels = 0;
+
+    // The headers of the loops that were unrolled, or left to run the remaining iterations
+    private final Set<Node> unrolled = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * A loop with a single branch back to its header, which is also the only way out of it, compared against the bound
+     * on the side given by {@code variableOnLeft}: {@code i < n} counts up and {@code n < i} counts down.
+     */
+    private record CountedLoop(List<Instruction> body, OpCondInstruction latch, String variable, int step, Element bound,
+                               boolean variableOnLeft) {
+    }
+
+    /**
+     * @param factor the number of copies of the body of the loops with an unknown number of iterations, or 1 to only
+     *               unroll the loops with a known one
+     * @param budget the number of instructions the method can grow by, or 0 to leave its loops as they are
+     */
+    public LoopUnrolling(Method method, int factor, int budget) {
+        this.method = method;
+        this.factor = factor;
+        this.budget = budget;
+    }
+
+    /**
+     * @return whether the method changed
+     */
+    public boolean run() {
+        // A full unrolling can leave the method no bigger, but a budget of 0 still keeps every loop
+        if (budget <= 0) return false;
+
+        boolean changed = false;
+        // The loop around a fully unrolled loop can become an innermost loop
+        while (unrollNextLoop()) {
+            changed = true;
+        }
+        if (!changed) return false;
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+        return true;
+    }
+
+    private boolean unrollNextLoop() {
+        OllirUtils.rebuildCFG(method);
+        DominatorTree dominatorTree = new DominatorTree(method);
+        List<NaturalLoop> loops = NaturalLoop.findLoops(dominatorTree);
+        for (NaturalLoop loop: loops) {
+            if (unrolled.contains(loop.getHeader())) continue;
+            if (loops.stream().anyMatch(other -> other != loop && loop.contains(other.getHeader()))) continue;
+
+            CountedLoop countedLoop = getCountedLoop(loop, dominatorTree);
+            if (countedLoop == null) continue;
+
+            Node entry = loop.getPreheaderEntry(method);
+            Integer iterations = entry == null ? null : countIterations(countedLoop);
+            if (iterations != null) {
+                unrollFully(countedLoop, iterations);
+                return true;
+            }
+            if (entry != null && !(entry instanceof GotoInstruction) && unrollPartially(countedLoop)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the loop, if its instructions are the ones from its header to its latch, and it is left once its induction
+     * variable reaches the bound, or null otherwise
+     */
+    private CountedLoop getCountedLoop(NaturalLoop loop, DominatorTree dominatorTree) {
+        List<Node> latches = loop.getLatches();
+        List<Node> exits = loop.getExits();
+        if (latches.size() != 1 || !(latches.get(0) instanceof OpCondInstruction latch)
+                || exits.size() != 1 || exits.get(0) != latch
+                || !(loop.getHeader() instanceof Instruction header)
+                || method.getLabels().get(latch.getLabel()) != header
+                || !(latch.getCondition() instanceof BinaryOpInstruction condition)
+                || condition.getOperation().getOpType() != OperationType.LTH) {
+            return null;
+        }
+
+        int start = indexOf(header);
+        int end = indexOf(latch);
+        if (end - start + 1 != loop.getNodes().size()) return null;
+        List<Instruction> body = new ArrayList<>(method.getInstructions().subList(start, end));
+        if (!body.stream().allMatch(loop::contains)) return null;
+
+        Map<String, List<AssignInstruction>> definitions = new HashMap<>();
+        for (Instruction instruction: body) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                definitions.computeIfAbsent(((Operand) assign.getDest()).getName(), name -> new ArrayList<>()).add(assign);
+            }
+        }
+
+        boolean variableOnLeft = true;
+        Element variable = condition.getLeftOperand();
+        Element bound = condition.getRightOperand();
+        Integer step = StrengthReduction.getStep(variable, definitions);
+        if (step == null) {
+            variableOnLeft = false;
+            variable = condition.getRightOperand();
+            bound = condition.getLeftOperand();
+            step = StrengthReduction.getStep(variable, definitions);
+        }
+        if (step == null || (variableOnLeft ? step <= 0 : step >= 0)
+                || !StrengthReduction.isInvariant(bound, definitions)) {
+            return null;
+        }
+
+        // The variable is updated once on every iteration, before the condition reads it
+        String name = ((Operand) variable).getName();
+        if (!dominatorTree.dominates(definitions.get(name).get(0), latch)) return null;
+
+        return new CountedLoop(body, latch, name, step, bound, variableOnLeft);
+    }
+
+    /**
+     * @return the number of times the body runs, if it is known and the copies fit in the budget, or null otherwise
+     */
+    private Integer countIterations(CountedLoop loop) {
+        if (!(loop.bound() instanceof LiteralElement literal)) return null;
+        Integer initialValue = getInitialValue(loop);
+        if (initialValue == null) return null;
+
+        int bound = Integer.parseInt(literal.getLiteral());
+        int value = initialValue;
+        int bodySize = loop.body().size();
+        // The condition is left out, so each copy after the first one takes the size of the body
+        for (int iterations = 1; (iterations - 1) * bodySize - 1 <= budget; iterations++) {
+            value += loop.step();
+            if (!(loop.variableOnLeft() ? value < bound : bound < value)) return iterations;
+        }
+        return null;
+    }
+
+    /**
+     * @return the constant assigned to the induction variable right before the loop, on the path from its only entry,
+     * or null if there is none
+     */
+    private Integer getInitialValue(CountedLoop loop) {
+        Set<Instruction> labelled = Collections.newSetFromMap(new IdentityHashMap<>());
+        labelled.addAll(method.getLabels().values());
+
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = indexOf(loop.body().get(0)) - 1; index >= 0; index--) {
+            Instruction instruction = instructions.get(index);
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof Operand dest
+                    && !(dest instanceof ArrayOperand) && dest.getName().equals(loop.variable())) {
+                return assign.getRhs() instanceof SingleOpInstruction singleOp
+                        && singleOp.getSingleOperand() instanceof LiteralElement literal
+                        ? Integer.parseInt(literal.getLiteral())
+                        : null;
+            }
+            // Other paths join at a label, and the instruction before a jump or return does not lead to the loop
+            if (labelled.contains(instruction) || instruction instanceof GotoInstruction
+                    || instruction instanceof ReturnInstruction) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void unrollFully(CountedLoop loop, int iterations) {
+        List<Instruction> instructions = method.getInstructions();
+        int start = indexOf(loop.body().get(0));
+        int end = indexOf(loop.latch());
+        List<Instruction> copies = copyBody(loop, iterations, instructions.get(end + 1), true);
+
+        instructions.subList(start, end + 1).clear();
+        instructions.addAll(start, copies);
+        budget -= copies.size() - (end - start + 1);
+    }
+
+    /**
+     * Places the copies of the body before the loop, in a loop that only runs while the bound minus the steps of all
+     * copies but the last one is not reached yet. That bound is computed before the loop, and when it wraps around the
+     * integers, the copies are skipped. The original loop then checks whether any iteration remains.
+     */
+    private boolean unrollPartially(CountedLoop loop) {
+        int checks = loop.bound() instanceof LiteralElement ? 3 : 5;
+        int copies = Math.min(factor, (budget - checks) / loop.body().size());
+        if (copies < 2) return false;
+
+        long distance = (long) (copies - 1) * loop.step();
+        if (Math.abs(distance) > Integer.MAX_VALUE) return false;
+        if (loop.bound() instanceof LiteralElement literal) {
+            long value = Long.parseLong(literal.getLiteral()) - distance;
+            if (value != (int) value) return false;
+        }
+
+        List<Instruction> code = new ArrayList<>();
+        String remainderLabel = newLabel("REMAINDER");
+        Element unrolledBound;
+        if (loop.bound() instanceof LiteralElement literal) {
+            unrolledBound = new LiteralElement(String.valueOf(Long.parseLong(literal.getLiteral()) - distance), INT_TYPE);
+        } else {
+            String name = newVariable();
+            OperationType operationType = distance > 0 ? OperationType.SUB : OperationType.ADD;
+            code.add(new AssignInstruction(new Operand(name, INT_TYPE), INT_TYPE, new BinaryOpInstruction(
+                    copyOf(loop.bound()), new Operation(operationType, INT_TYPE),
+                    new LiteralElement(String.valueOf(Math.abs(distance)), INT_TYPE))));
+            unrolledBound = new Operand(name, INT_TYPE);
+
+            // Wrapping around puts the new bound past the original one
+            Element left = loop.variableOnLeft() ? loop.bound() : unrolledBound;
+            Element right = loop.variableOnLeft() ? unrolledBound : loop.bound();
+            code.add(createBranch(new BinaryOpInstruction(copyOf(left), createOperation(loop, OperationType.LTH),
+                    copyOf(right)), remainderLabel));
+        }
+        code.add(createBranch(compare(loop, OperationType.GTE, unrolledBound), remainderLabel));
+
+        Instruction header = loop.body().get(0);
+        Instruction exit = method.getInstructions().get(indexOf(loop.latch()) + 1);
+        String unrolledLabel = newLabel(loop.latch().getLabel());
+        OpCondInstruction unrolledLatch = createBranch(compare(loop, OperationType.LTH, unrolledBound), unrolledLabel);
+        OpCondInstruction remainder = createBranch(compare(loop, OperationType.GTE, loop.bound()), getLabel(exit));
+
+        List<Instruction> body = copyBody(loop, copies, unrolledLatch, false);
+        method.addLabel(unrolledLabel, body.get(0));
+        method.addLabel(remainderLabel, remainder);
+        code.addAll(body);
+        code.add(unrolledLatch);
+        code.add(remainder);
+
+        method.getInstructions().addAll(indexOf(header), code);
+        unrolled.add(header);
+        unrolled.add(body.get(0));
+        budget -= code.size();
+        return true;
+    }
+
+    /**
+     * @return the copies of the body, one after the other, with labels of their own, where the jumps to the condition of
+     * the loop go to the next copy, or from the last one to the given instruction. The first copy can take the labels of
+     * the original instructions instead, when it replaces them.
+     */
+    private List<Instruction> copyBody(CountedLoop loop, int copies, Instruction next, boolean keepLabels) {
+        Set<Instruction> body = Collections.newSetFromMap(new IdentityHashMap<>());
+        body.addAll(loop.body());
+        Map<String, Instruction> bodyLabels = new HashMap<>();
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (body.contains(label.getValue()) || label.getValue() == loop.latch()) {
+                bodyLabels.put(label.getKey(), label.getValue());
+            }
+        }
+        Set<String> jumps = new HashSet<>();
+        for (Instruction instruction: loop.body()) {
+            if (instruction instanceof GotoInstruction jump) jumps.add(jump.getLabel());
+            if (instruction instanceof CondBranchInstruction branch) jumps.add(branch.getLabel());
+        }
+
+        List<Map<String, String>> names = new ArrayList<>();
+        List<Map<Instruction, Instruction>> clones = new ArrayList<>();
+        List<Instruction> instructions = new ArrayList<>();
+        for (int copy = 0; copy < copies; copy++) {
+            Map<String, String> copyNames = new HashMap<>();
+            for (String label: bodyLabels.keySet()) {
+                if (keepLabels && copy == 0) {
+                    copyNames.put(label, label);
+                } else if (jumps.contains(label)) {
+                    copyNames.put(label, newLabel(label));
+                }
+            }
+
+            Map<Instruction, Instruction> copyClones = new IdentityHashMap<>();
+            for (Instruction instruction: loop.body()) {
+                Instruction clone = copyOf(instruction, copyNames);
+                copyClones.put(instruction, clone);
+                instructions.add(clone);
+            }
+            names.add(copyNames);
+            clones.add(copyClones);
+        }
+
+        for (int copy = 0; copy < copies; copy++) {
+            Instruction copyNext = copy + 1 < copies ? clones.get(copy + 1).get(loop.body().get(0)) : next;
+            for (Map.Entry<String, String> name: names.get(copy).entrySet()) {
+                Instruction target = bodyLabels.get(name.getKey());
+                method.getLabels().put(name.getValue(), target == loop.latch() ? copyNext : clones.get(copy).get(target));
+            }
+        }
+        return instructions;
+    }
+
+    private BinaryOpInstruction compare(CountedLoop loop, OperationType operationType, Element bound) {
+        Element variable = new Operand(loop.variable(), INT_TYPE);
+        return loop.variableOnLeft()
+                ? new BinaryOpInstruction(variable, createOperation(loop, operationType), copyOf(bound))
+                : new BinaryOpInstruction(copyOf(bound), createOperation(loop, operationType), variable);
+    }
+
+    private static Operation createOperation(CountedLoop loop, OperationType operationType) {
+        return new Operation(operationType, loop.latch().getCondition().getOperation().getTypeInfo());
+    }
+
+    private static OpCondInstruction createBranch(OpInstruction condition, String label) {
+        OpCondInstruction branch = new OpCondInstruction(condition);
+        branch.setLabel(label);
+        return branch;
+    }
+
+    /**
+     * Each copy gets elements of its own, so that they can be renamed on their own.
+     */
+    private Instruction copyOf(Instruction instruction, Map<String, String> labels) {
+        if (instruction instanceof AssignInstruction assign) {
+            return new AssignInstruction(copyOf(assign.getDest()), assign.getTypeOfAssign(),
+                    copyOf(assign.getRhs(), labels));
+        }
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            return new BinaryOpInstruction(copyOf(binaryOp.getLeftOperand()), copyOf(binaryOp.getOperation()),
+                    copyOf(binaryOp.getRightOperand()));
+        }
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return new UnaryOpInstruction(copyOf(unaryOp.getOperation()), copyOf(unaryOp.getOperand()));
+        }
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            return new SingleOpInstruction(copyOf(singleOp.getSingleOperand()));
+        }
+        if (instruction instanceof CallInstruction call) {
+            ArrayList<Element> operands = null;
+            if (call.getListOfOperands() != null) {
+                operands = new ArrayList<>();
+                for (Element operand: call.getListOfOperands()) {
+                    operands.add(copyOf(operand));
+                }
+            }
+            if (call.getSecondArg() != null) {
+                return new CallInstruction(call.getInvocationType(), copyOf(call.getFirstArg()),
+                        copyOf(call.getSecondArg()), operands == null ? new ArrayList<>() : operands,
+                        call.getReturnType());
+            }
+            return operands == null
+                    ? new CallInstruction(call.getInvocationType(), copyOf(call.getFirstArg()), call.getReturnType())
+                    : new CallInstruction(call.getInvocationType(), copyOf(call.getFirstArg()), operands,
+                    call.getReturnType());
+        }
+        if (instruction instanceof GetFieldInstruction getField) {
+            return new GetFieldInstruction(copyOf(getField.getFirstOperand()), copyOf(getField.getSecondOperand()),
+                    getField.getFieldType());
+        }
+        if (instruction instanceof PutFieldInstruction putField) {
+            return new PutFieldInstruction(copyOf(putField.getFirstOperand()), copyOf(putField.getSecondOperand()),
+                    copyOf(putField.getThirdOperand()), putField.getFieldType());
+        }
+        if (instruction instanceof GotoInstruction jump) {
+            return new GotoInstruction(labels.getOrDefault(jump.getLabel(), jump.getLabel()));
+        }
+        if (instruction instanceof OpCondInstruction branch) {
+            return createBranch((OpInstruction) copyOf(branch.getCondition(), labels),
+                    labels.getOrDefault(branch.getLabel(), branch.getLabel()));
+        }
+        if (instruction instanceof SingleOpCondInstruction branch) {
+            SingleOpCondInstruction copy = new SingleOpCondInstruction(
+                    (SingleOpInstruction) copyOf(branch.getCondition(), labels));
+            copy.setLabel(labels.getOrDefault(branch.getLabel(), branch.getLabel()));
+            return copy;
+        }
+        throw new RuntimeException("Can not copy instruction " + instruction.getInstType() + " in method "
+                + method.getMethodName());
+    }
+
+    private static Operation copyOf(Operation operation) {
+        return new Operation(operation.getOpType(), operation.getTypeInfo());
+    }
+
+    private static Element copyOf(Element element) {
+        if (element instanceof LiteralElement literal) return new LiteralElement(literal.getLiteral(), literal.getType());
+
+        Operand operand = (Operand) element;
+        Operand copy;
+        if (operand instanceof ArrayOperand array) {
+            ArrayList<Element> indexes = new ArrayList<>();
+            for (Element index: array.getIndexOperands()) {
+                indexes.add(copyOf(index));
+            }
+            copy = new ArrayOperand(array.getName(), array.getType(), indexes);
+        } else {
+            copy = new Operand(operand.getName(), operand.getType());
+        }
+        if (operand.isParameter()) copy.setParamId(operand.getParamId());
+        return copy;
+    }
+
+    /**
+     * @return a label of the instruction, adding one if it has none
+     */
+    private String getLabel(Instruction instruction) {
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (label.getValue() == instruction) return label.getKey();
+        }
+        String label = newLabel("ENDLOOP");
+        method.addLabel(label, instruction);
+        return label;
+    }
+
+    private String newLabel(String label) {
+        String name;
+        do {
+            name = label + "_" + labels++;
+        } while (method.getLabels().containsKey(name));
+        return name;
+    }
+
+    private String newVariable() {
+        String name;
+        do {
+            name = VARIABLE_PREFIX + variables++;
+        } while (method.getVarTable().containsKey(name));
+        return name;
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+}
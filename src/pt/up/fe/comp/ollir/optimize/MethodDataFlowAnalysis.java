@@ -3,7 +3,10 @@ package pt.up.fe.comp.ollir.optimize;
 import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.ollir.OllirUtils;
 import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.stats.CompilationStats;
+import pt.up.fe.comp.stats.PipelineStage;
 
 import java.util.*;
 
@@ -13,110 +16,204 @@ public class MethodDataFlowAnalysis {
 
     private final Method method;
     private final OllirResult ollirResult;
-    private ArrayList<Set<String>> def;
-    private ArrayList<Set<String>> use;
-    private ArrayList<Set<String>> in;
-    private ArrayList<Set<String>> out;
+    // Variables are numbered densely, in the order they are found, to index the bits of the liveness sets
+    private Map<String, Integer> variableIndexes;
+    private List<String> variables;
+    private BitVector[] def;
+    private BitVector[] use;
+    private BitVector[] in;
+    private BitVector[] out;
     private ArrayList<Node> nodeOrder;
+    private Map<Node, Integer> nodeIndexes;
 
     private InterferenceGraph interferenceGraph;
+    private final Set<Node> removedInstructions = Collections.newSetFromMap(new IdentityHashMap<>());
+    private List<Move> moves;
+
+    /**
+     * A copy between two local variables, which can share a register when they do not interfere.
+     */
+    private record Move(RegisterNode dest, RegisterNode source, double weight) {
+    }
 
     public MethodDataFlowAnalysis(Method method, OllirResult ollirResult) {
         this.method = method;
         this.ollirResult = ollirResult;
     }
 
+    /**
+     * Orders the nodes reachable from the beginning of the method in postorder, with an iterative depth-first search
+     * so that long methods do not overflow the stack.
+     */
     private void orderNodes() {
-        Node beginNode = method.getBeginNode();
         this.nodeOrder = new ArrayList<>();
-        dfsOrderNodes(beginNode, new ArrayList<>());
-    }
 
-    private void dfsOrderNodes(Node node, ArrayList<Node> visited) {
+        // The CFG can still point to instructions removed as dead code
+        Set<Node> instructions = Collections.newSetFromMap(new IdentityHashMap<>());
+        instructions.addAll(method.getInstructions());
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
 
-        if (node == null
-                || nodeOrder.contains(node)
-                || visited.contains(node)) {
-            return;
+        Deque<Node> path = new ArrayDeque<>();
+        Deque<Iterator<Node>> pathSuccessors = new ArrayDeque<>();
+
+        Node beginNode = method.getBeginNode();
+        if (beginNode != null) {
+            visited.add(beginNode);
+            path.push(beginNode);
+            pathSuccessors.push(beginNode.getSuccessors().iterator());
         }
 
-        if (node instanceof Instruction instruction && !method.getInstructions().contains(instruction))
-            return;
+        while (!path.isEmpty()) {
+            Iterator<Node> successors = pathSuccessors.peek();
+            if (!successors.hasNext()) {
+                pathSuccessors.pop();
+                nodeOrder.add(path.pop());
+                continue;
+            }
+
+            Node succ = successors.next();
+            if (succ == null || visited.contains(succ)) continue;
+            if (succ instanceof Instruction && !instructions.contains(succ)) continue;
+
+            visited.add(succ);
+            path.push(succ);
+            pathSuccessors.push(succ.getSuccessors().iterator());
+        }
+    }
+
+    /**
+     * Removes the assignments to variables that are never used afterwards until there are none left, since removing
+     * one can make the variables it used dead. The CFG and liveness are only computed once: when an assignment is
+     * removed, only the liveness of the variables it used is computed again, and only their definitions are checked
+     * again.
+     */
+    public void eliminateAllDeadVars() {
+        OllirUtils.rebuildCFG(method);
+        calcInOut();
+
+        if (eliminateDeadVarsIncrementally()) method.buildVarTable();
+    }
 
-        visited.add(node);
+    /**
+     * @param linearScan whether to allocate with a linear scan over the live intervals instead of coloring the
+     *                   interference graph
+     */
+    public void allocateRegisters(int maxK, boolean linearScan) {
+        OllirUtils.rebuildCFG(method);
+        calcInOut();
+
+        HashMap<String, Descriptor> varTable = method.getVarTable();
+        if (linearScan) {
+            int startReg = 1 + getParamVariables().size();
+            for (Map.Entry<String, Integer> entry: allocateLinearScan(maxK, startReg).entrySet()) {
+                varTable.get(entry.getKey()).setVirtualReg(entry.getValue());
+            }
+        } else {
+            buildInterferenceGraph();
+            colorInterferenceGraph(maxK);
 
-        for (Node succ: node.getSuccessors()) {
-            dfsOrderNodes(succ, visited);
+            for (RegisterNode node: interferenceGraph.getLocalVars()) {
+                varTable.get(node.getName()).setVirtualReg(node.getRegister());
+            }
+            for (RegisterNode node: interferenceGraph.getParams()) {
+                varTable.get(node.getName()).setVirtualReg(node.getRegister());
+            }
         }
 
-        nodeOrder.add(node);
+        if (varTable.get("this") != null) {
+            varTable.get("this").setVirtualReg(0);
+        }
     }
 
     public void calcInOut() {
         orderNodes();
-        in = new ArrayList<>();
-        out = new ArrayList<>();
-        def = new ArrayList<>();
-        use = new ArrayList<>();
-        for (Node node: nodeOrder) {
-            in.add(new HashSet<>());
-            out.add(new HashSet<>());
-            def.add(new HashSet<>());
-            use.add(new HashSet<>());
-            calcUseDef(node);
+
+        int nodeCount = nodeOrder.size();
+        nodeIndexes = new IdentityHashMap<>();
+        for (int index = 0; index < nodeCount; index++) {
+            nodeIndexes.put(nodeOrder.get(index), index);
         }
 
-        boolean livenessHasChanged;
+        variableIndexes = new HashMap<>();
+        variables = new ArrayList<>();
+        in = new BitVector[nodeCount];
+        out = new BitVector[nodeCount];
+        def = new BitVector[nodeCount];
+        use = new BitVector[nodeCount];
+        for (int index = 0; index < nodeCount; index++) {
+            def[index] = new BitVector();
+            use[index] = new BitVector();
+            calcUseDef(nodeOrder.get(index));
+        }
+        for (int index = 0; index < nodeCount; index++) {
+            in[index] = new BitVector(variables.size());
+            out[index] = new BitVector(variables.size());
+        }
 
-        do  {
-            livenessHasChanged = false;
+        // Starting from empty sets, in and out only grow, so they can be updated in place. Liveness flows backwards,
+        // so the nodes are visited in postorder (the reverse postorder of the reversed CFG), and a node is only
+        // visited again when the in set of one of its successors changes
+        BitVector worklist = new BitVector(nodeCount);
+        for (int index = 0; index < nodeCount; index++) {
+            worklist.set(index);
+        }
 
-            for (int index = 0; index < nodeOrder.size(); index++) {
+        while (!worklist.isEmpty()) {
+            for (int index = worklist.nextSetBit(0); index >= 0; index = worklist.nextSetBit(index + 1)) {
+                worklist.clear(index);
                 Node node = nodeOrder.get(index);
 
                 // out[n] = (union (for all s that belongs to succ[n])) in[s]
                 // in[n] = use[n] union (out[n] - def[n])
 
-                Set<String> origIn = new HashSet<>(in.get(index));
-                Set<String> origOut = new HashSet<>(out.get(index));
-
-                out.get(index).clear();
-
                 for (Node succ : node.getSuccessors()) {
-                    int succIndex = nodeOrder.indexOf(succ);
-                    if (succIndex == -1) continue;
-                    Set<String> in_succIndex = in.get(succIndex);
+                    Integer succIndex = nodeIndexes.get(succ);
+                    if (succIndex == null) continue;
 
-                    out.get(index).addAll(in_succIndex);
+                    out[index].or(in[succIndex]);
                 }
 
-                in.get(index).clear();
+                boolean inHasChanged = in[index].or(use[index]);
+                inHasChanged |= in[index].orAndNot(out[index], def[index]);
 
-                Set<String> outDefDiff = new HashSet<>(out.get(index));
-                outDefDiff.removeAll(def.get(index));
+                if (inHasChanged) {
+                    for (Node pred : node.getPredecessors()) {
+                        Integer predIndex = nodeIndexes.get(pred);
+                        if (predIndex != null) worklist.set(predIndex);
+                    }
+                }
+            }
 
-                outDefDiff.addAll(use.get(index));
-                in.get(index).addAll(outDefDiff);
+            CompilationStats.addIterations(PipelineStage.DATAFLOW, 1);
+        }
+    }
 
-                livenessHasChanged = livenessHasChanged ||
-                        !origIn.equals(in.get(index)) || !origOut.equals(out.get(index));
-            }
+    private int variableIndex(String name) {
+        return variableIndexes.computeIfAbsent(name, key -> {
+            variables.add(key);
+            return variables.size() - 1;
+        });
+    }
 
-        } while (livenessHasChanged);
+    private boolean contains(BitVector[] sets, int index, String name) {
+        Integer variable = variableIndexes.get(name);
+        return variable != null && sets[index].get(variable);
     }
 
-    private void addToUseDefSet(Node node, Element val, ArrayList<Set<String>> arr) {
-        int index = nodeOrder.indexOf(node);
+    private void addToUseDefSet(Node node, Element val, BitVector[] sets) {
+        int index = nodeIndexes.get(node);
 
         if (val instanceof ArrayOperand arrop) {
             for (Element element: arrop.getIndexOperands()) {
                 setUse(node, element);
             }
-            arr.get(index).add(arrop.getName());
+            // Storing to an element reads the array reference instead of defining the variable
+            use[index].set(variableIndex(arrop.getName()));
+            return;
         }
 
         if (val instanceof Operand op && !op.getType().getTypeOfElement().equals(ElementType.THIS)) {
-            arr.get(index).add(op.getName());
+            sets[index].set(variableIndex(op.getName()));
         }
     }
 
@@ -197,93 +294,426 @@ public class MethodDataFlowAnalysis {
         return names;
     }
 
-    public void buildInterferenceGraph() {
-        Set<String> variables = new HashSet<>();
-        Set<String> params = new HashSet<>();
+    /**
+     * @return the parameters in the variable table, in declaration order, as they take the registers after "this"
+     */
+    private List<String> getParamVariables() {
+        List<String> params = new ArrayList<>();
+        for (String param: getParamNames()) {
+            if (method.getVarTable().containsKey(param)) params.add(param);
+        }
+        return params;
+    }
 
+    private List<String> getLocalVariables() {
+        List<String> localVariables = new ArrayList<>();
+        List<String> paramNames = getParamNames();
         for (String variable: method.getVarTable().keySet()) {
-            if (getParamNames().contains(variable)) {
-                params.add(variable);
-            } else if (!variable.equals("this")) {
-                variables.add(variable);
+            if (!paramNames.contains(variable) && !variable.equals("this")) {
+                localVariables.add(variable);
             }
         }
+        return localVariables;
+    }
 
-        interferenceGraph = new InterferenceGraph(variables, params);
+    public void buildInterferenceGraph() {
+        interferenceGraph = new InterferenceGraph(getLocalVariables(), getParamVariables());
+
+        int[] loopDepths = calcLoopDepths();
+        double[] spillCosts = calcSpillCosts(loopDepths);
+        RegisterNode[] nodes = new RegisterNode[variables.size()];
+        for (RegisterNode node: interferenceGraph.getLocalVars()) {
+            Integer variable = variableIndexes.get(node.getName());
+            if (variable != null) {
+                nodes[variable] = node;
+                node.setSpillCost(spillCosts[variable]);
+            }
+        }
+        for (RegisterNode node: interferenceGraph.getParams()) {
+            Integer variable = variableIndexes.get(node.getName());
+            if (variable != null) nodes[variable] = node;
+        }
 
-        for (RegisterNode varX: interferenceGraph.getLocalVars()) {
-            for (RegisterNode varY: interferenceGraph.getLocalVars()) {
-                if (varX.equals(varY)) {
-                    continue;
+        // The parameters are defined when the method begins, so they interfere with the variables live then
+        Integer beginIndex = nodeIndexes.get(method.getBeginNode());
+        if (beginIndex != null) {
+            for (RegisterNode param: interferenceGraph.getParams()) {
+                for (int y = out[beginIndex].nextSetBit(0); y >= 0; y = out[beginIndex].nextSetBit(y + 1)) {
+                    if (nodes[y] != null) interferenceGraph.addEdge(param, nodes[y]);
                 }
-                for (int index = 0; index < nodeOrder.size(); index++) {
-                    if (def.get(index).contains(varX.getName())
-                            && out.get(index).contains(varY.getName())) {
-                        interferenceGraph.addEdge(varX, varY);
-                    }
+            }
+        }
+
+        // An edge for every variable defined at a node while another one is live after it, except for the source of
+        // a copy, which holds the same value
+        moves = new ArrayList<>();
+        for (int index = 0; index < nodeOrder.size(); index++) {
+            int source = copySource(nodeOrder.get(index));
+            for (int x = def[index].nextSetBit(0); x >= 0; x = def[index].nextSetBit(x + 1)) {
+                if (nodes[x] == null) continue;
+                for (int y = out[index].nextSetBit(0); y >= 0; y = out[index].nextSetBit(y + 1)) {
+                    if (x == y || y == source || nodes[y] == null) continue;
+                    interferenceGraph.addEdge(nodes[x], nodes[y]);
+                }
+
+                if (source >= 0 && source != x && nodes[source] != null) {
+                    moves.add(new Move(nodes[x], nodes[source], Math.pow(10, loopDepths[index])));
                 }
             }
         }
     }
 
-    public void colorInterferenceGraph(int maxK) {
-        Stack<RegisterNode> stack = new Stack<>();
-        int k = 0;
+    private boolean isParam(RegisterNode node) {
+        return interferenceGraph.isParam(node);
+    }
 
-        while (interferenceGraph.getVisibleNodesCount() > 0) {
-            for (RegisterNode node: interferenceGraph.getLocalVars()) {
-                if (!node.isVisible()) continue;
-                int degree = node.countVisibleNeighbors();
-                if (degree < k) {
-                    node.setInvisible();
-                    stack.push(node);
-                } else {
-                    k += 1;
-                }
+    /**
+     * @return the variable copied by the node, if it is a copy between two variables, or -1 otherwise
+     */
+    private int copySource(Node node) {
+        if (!(node instanceof AssignInstruction instruction)) return -1;
+        if (!(instruction.getDest() instanceof Operand) || instruction.getDest() instanceof ArrayOperand) return -1;
+        if (!(instruction.getRhs() instanceof SingleOpInstruction rhs)) return -1;
+
+        if (!(rhs.getSingleOperand() instanceof Operand operand) || operand instanceof ArrayOperand
+                || operand.getType().getTypeOfElement().equals(ElementType.THIS)) {
+            return -1;
+        }
+
+        Integer variable = variableIndexes.get(operand.getName());
+        return variable == null ? -1 : variable;
+    }
+
+    /**
+     * Conservatively coalesces the copies, hottest first, merging their variables when the result can still be
+     * colored with k registers: when the merged node has less than k neighbors with k or more neighbors (Briggs), or
+     * every neighbor of the source already interferes with the destination or has less than k neighbors (George).
+     * A variable copied to or from a parameter can only be merged into the parameter, which keeps its register, so
+     * only the George test applies.
+     */
+    private void coalesceMoves(int k) {
+        List<Move> sortedMoves = new ArrayList<>(moves);
+        sortedMoves.sort(Comparator.comparingDouble(Move::weight).reversed());
+
+        for (Move move: sortedMoves) {
+            RegisterNode dest = move.dest().getRepresentative();
+            RegisterNode source = move.source().getRepresentative();
+            if (dest == source || interferenceGraph.interferes(dest, source)) continue;
+
+            if (isParam(source)) {
+                RegisterNode param = source;
+                source = dest;
+                dest = param;
+            } else if (!isParam(dest) && briggsTest(dest, source, k)) {
+                interferenceGraph.coalesce(dest, source);
+                continue;
+            }
+
+            if (!isParam(source) && georgeTest(dest, source, k)) {
+                interferenceGraph.coalesce(dest, source);
             }
         }
+    }
 
-        if (maxK > 0 && k > maxK) {
-            ollirResult.getReports().add(
-                    new Report(
-                            ReportType.ERROR,
-                            OPTIMIZATION,
-                            -1,
-                            "Not enough registers. At least " + k + " registers are needed.")
-            );
-            throw new RuntimeException("Not enough registers." +
-                    " At least " + k + " registers are needed but " + maxK + " were requested.");
+    private boolean briggsTest(RegisterNode dest, RegisterNode source, int k) {
+        int significantNeighbors = 0;
+        for (RegisterNode neighbor: dest.getEdges()) {
+            // A common neighbor loses one of its neighbors with the merge
+            int degree = neighbor.countVisibleNeighbors();
+            if (interferenceGraph.interferes(neighbor, source)) degree--;
+            if (degree >= k) significantNeighbors++;
+        }
+        for (RegisterNode neighbor: source.getEdges()) {
+            if (interferenceGraph.interferes(neighbor, dest)) continue;
+            if (neighbor.countVisibleNeighbors() >= k) significantNeighbors++;
+        }
+        return significantNeighbors < k;
+    }
 
+    private boolean georgeTest(RegisterNode dest, RegisterNode source, int k) {
+        for (RegisterNode neighbor: source.getEdges()) {
+            if (!interferenceGraph.interferes(neighbor, dest) && neighbor.countVisibleNeighbors() >= k) return false;
         }
-        int startReg = 1 + interferenceGraph.getParams().size();
-        while (!stack.empty()) {
-            RegisterNode node = stack.pop();
-            for (int reg = startReg; reg <= k + startReg; reg++) {
-                if (node.edgeFreeRegister(reg)) {
-                    node.setRegister(reg);
-                    node.setVisible();
-                    break;
+        return true;
+    }
+
+    /**
+     * @return the live interval of every local variable and parameter that is defined or used in the method
+     */
+    public List<LiveInterval> buildLiveIntervals() {
+        int nodeCount = nodeOrder.size();
+        int[] starts = new int[variables.size()];
+        int[] ends = new int[variables.size()];
+        String[] copies = new String[variables.size()];
+        Arrays.fill(starts, Integer.MAX_VALUE);
+        Arrays.fill(ends, -1);
+
+        for (int index = 0; index < nodeCount; index++) {
+            // The nodes were ordered in postorder
+            int position = 2 * (nodeCount - 1 - index);
+            for (int x = in[index].nextSetBit(0); x >= 0; x = in[index].nextSetBit(x + 1)) {
+                starts[x] = Math.min(starts[x], position);
+                ends[x] = Math.max(ends[x], position);
+            }
+
+            BitVector written = new BitVector(variables.size());
+            written.or(def[index]);
+            written.or(out[index]);
+            for (int x = written.nextSetBit(0); x >= 0; x = written.nextSetBit(x + 1)) {
+                starts[x] = Math.min(starts[x], position + 1);
+                ends[x] = Math.max(ends[x], position + 1);
+            }
+
+            int source = copySource(nodeOrder.get(index));
+            if (source >= 0) {
+                for (int x = def[index].nextSetBit(0); x >= 0; x = def[index].nextSetBit(x + 1)) {
+                    if (x != source && copies[x] == null) copies[x] = variables.get(source);
                 }
             }
-            if (!node.isVisible()) {
-                ollirResult.getReports().add(
-                        new Report(
-                                ReportType.ERROR,
-                                OPTIMIZATION,
-                                -1,
-                                "Unexpected error. Register allocation failed.")
-                );
+        }
 
-                throw new RuntimeException("Unexpected error. Register allocation failed.");
+        List<String> intervalVariables = new ArrayList<>(getLocalVariables());
+        intervalVariables.addAll(getParamVariables());
+
+        List<LiveInterval> intervals = new ArrayList<>();
+        for (String variable: intervalVariables) {
+            Integer x = variableIndexes.get(variable);
+            if (x != null && ends[x] >= 0) {
+                intervals.add(new LiveInterval(variable, starts[x], ends[x], copies[x]));
             }
         }
+        return intervals;
+    }
+
+    /**
+     * Allocates the local variables with a linear scan over their live intervals. As with the graph coloring, the
+     * variables that do not fit in the register limit are given extra locals and a warning is reported.
+     *
+     * @return the register of every local variable and parameter
+     */
+    private Map<String, Integer> allocateLinearScan(int maxK, int startReg) {
+        // The parameters are live from the beginning of the method, and their registers are reused after that
+        Map<String, Integer> params = new HashMap<>();
+        for (String param: getParamVariables()) {
+            params.put(param, params.size() + 1);
+        }
+
+        LinearScanAllocator allocator = new LinearScanAllocator(startReg, maxK);
+        List<LiveInterval> spilled = allocator.allocate(buildLiveIntervals(), params);
+        Map<String, Integer> registers = new HashMap<>(allocator.getRegisters());
+
+        if (!spilled.isEmpty()) {
+            LinearScanAllocator extraAllocator = new LinearScanAllocator(startReg + maxK, 0);
+            extraAllocator.allocate(spilled, Map.of());
+            registers.putAll(extraAllocator.getRegisters());
+
+            int usedRegisters = maxK + new HashSet<>(extraAllocator.getRegisters().values()).size();
+            addReport(new Report(ReportType.WARNING, OPTIMIZATION, -1,
+                    "Not enough registers in method " + method.getMethodName() + ". " + maxK +
+                    " registers were requested but " + usedRegisters + " are used, spilling " +
+                    spilled.stream().map(LiveInterval::variable).sorted().toList() + " to extra locals."));
+        }
+
+        // The variables that are never defined or used are not in the code, but still need a register
+        for (String variable: getLocalVariables()) {
+            registers.putIfAbsent(variable, startReg);
+        }
+        return registers;
+    }
+
+    /**
+     * Colors the interference graph with an optimistic (Briggs) allocator. With a register limit, the variables that
+     * do not fit in it are spilled to extra locals, since the JVM has no other storage for them, and a warning is
+     * reported. Without a limit, the fewest registers with which no variable is spilled are used.
+     */
+    public void colorInterferenceGraph(int maxK) {
+        int startReg = 1 + interferenceGraph.getParams().size();
 
         int reg = 1;
         for (RegisterNode node: interferenceGraph.getParams()) {
             node.setRegister(reg++);
         }
 
+        // The parameters' registers can also be used by the local variables
+        if (maxK > 0) {
+            coalesceMoves(startReg - 1 + maxK);
+            List<RegisterNode> spilled = colorInterferenceGraph(maxK, startReg);
+            if (!spilled.isEmpty()) {
+                int registers = maxK;
+                for (RegisterNode node: spilled) {
+                    node.setRegister(node.firstFreeRegister(1));
+                    registers = Math.max(registers, node.getRegister() - startReg + 1);
+                }
+
+                addReport(new Report(ReportType.WARNING, OPTIMIZATION, -1,
+                        "Not enough registers in method " + method.getMethodName() + ". " + maxK +
+                        " registers were requested but " + registers + " are used, spilling " +
+                        spilled.stream().map(RegisterNode::getName).sorted().toList() + " to extra locals."));
+            }
+        } else {
+            // The copies are coalesced as long as the registers needed before do not grow
+            coalesceMoves(startReg - 1 + colorWithFewestRegisters(startReg));
+            colorWithFewestRegisters(startReg);
+        }
+
+        for (RegisterNode node: interferenceGraph.getLocalVars()) {
+            if (node.getRepresentative() != node) node.setRegister(node.getRepresentative().getRegister());
+        }
+    }
+
+    /**
+     * Colors the local variables with as many registers as there are variables, so that none is spilled, then tries
+     * fewer registers while that holds.
+     *
+     * @return the number of registers used after the parameters' ones
+     */
+    private int colorWithFewestRegisters(int startReg) {
+        List<RegisterNode> nodes = interferenceGraph.getRepresentativeNodes();
+        colorInterferenceGraph(nodes.size(), startReg);
+
+        int k = 0;
+        for (RegisterNode node: nodes) {
+            k = Math.max(k, node.getRegister() - startReg + 1);
+        }
+        while (k > 0 && colorInterferenceGraph(k - 1, startReg).isEmpty()) {
+            k--;
+        }
+        colorInterferenceGraph(k, startReg);
+        return k;
+    }
+
+    /**
+     * Tries to color the local variables that were not coalesced into others with the parameters' registers and k
+     * registers from startReg onwards.
+     *
+     * @return the variables left without a register
+     */
+    private List<RegisterNode> colorInterferenceGraph(int k, int startReg) {
+        // The parameters are always visible, and count towards the degree of their neighbors
+        int colors = startReg - 1 + k;
+        List<RegisterNode> nodes = interferenceGraph.getRepresentativeNodes();
+        for (RegisterNode node: nodes) {
+            node.setVisible();
+            node.clearRegister();
+        }
+
+        // Simplify: hide the nodes with less than k visible neighbors, which can always be colored, and when there
+        // are none left, the cheapest one to spill, optimistically hoping that its neighbors share registers
+        Deque<RegisterNode> stack = new ArrayDeque<>();
+        Deque<RegisterNode> lowDegreeNodes = new ArrayDeque<>();
+        for (RegisterNode node: nodes) {
+            if (node.countVisibleNeighbors() < colors) lowDegreeNodes.add(node);
+        }
+
+        int visibleNodes = nodes.size();
+        while (visibleNodes > 0) {
+            RegisterNode node = lowDegreeNodes.isEmpty() ? chooseSpillCandidate(nodes) : lowDegreeNodes.poll();
+            if (!node.isVisible()) continue;
+
+            node.setInvisible();
+            stack.push(node);
+            visibleNodes--;
+
+            for (RegisterNode neighbor: node.getEdges()) {
+                if (neighbor.isVisible() && !isParam(neighbor) && neighbor.countVisibleNeighbors() == colors - 1) {
+                    lowDegreeNodes.add(neighbor);
+                }
+            }
+        }
+
+        // Select: give each node the first register none of its neighbors has
+        List<RegisterNode> spilled = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            RegisterNode node = stack.pop();
+            node.setVisible();
+
+            int reg = node.firstFreeRegister(1);
+            if (reg < startReg + k) {
+                node.setRegister(reg);
+            } else {
+                spilled.add(node);
+            }
+        }
+        return spilled;
+    }
+
+    private RegisterNode chooseSpillCandidate(List<RegisterNode> nodes) {
+        RegisterNode candidate = null;
+        double candidateCost = Double.POSITIVE_INFINITY;
+        for (RegisterNode node: nodes) {
+            if (!node.isVisible()) continue;
+
+            // Spilling a node with more neighbors leaves more room for the others
+            double cost = node.getSpillCost() / (node.countVisibleNeighbors() + 1);
+            if (cost < candidateCost) {
+                candidate = node;
+                candidateCost = cost;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * @return how many loops each node is in, finding the natural loop of every back edge (an edge to a node that is
+     * not after it in reverse postorder, as the source code only has structured loops)
+     */
+    private int[] calcLoopDepths() {
+        int nodeCount = nodeOrder.size();
+        Map<Integer, BitVector> loops = new TreeMap<>();
+
+        for (int index = 0; index < nodeCount; index++) {
+            for (Node succ: nodeOrder.get(index).getSuccessors()) {
+                Integer header = nodeIndexes.get(succ);
+                if (header == null || header < index) continue;
+
+                BitVector loop = loops.computeIfAbsent(header, key -> new BitVector(nodeCount));
+                loop.set(header);
+
+                // The loop is the header and every node that reaches the back edge without going through the header
+                Deque<Integer> worklist = new ArrayDeque<>();
+                worklist.push(index);
+                while (!worklist.isEmpty()) {
+                    int node = worklist.pop();
+                    if (loop.get(node)) continue;
+
+                    loop.set(node);
+                    for (Node pred: nodeOrder.get(node).getPredecessors()) {
+                        Integer predIndex = nodeIndexes.get(pred);
+                        if (predIndex != null) worklist.push(predIndex);
+                    }
+                }
+            }
+        }
+
+        int[] depths = new int[nodeCount];
+        for (BitVector loop: loops.values()) {
+            for (int node = loop.nextSetBit(0); node >= 0; node = loop.nextSetBit(node + 1)) {
+                depths[node]++;
+            }
+        }
+        return depths;
+    }
+
+    private double[] calcSpillCosts(int[] loopDepths) {
+        double[] costs = new double[variables.size()];
 
+        for (int index = 0; index < nodeOrder.size(); index++) {
+            double weight = Math.pow(10, loopDepths[index]);
+            for (int x = def[index].nextSetBit(0); x >= 0; x = def[index].nextSetBit(x + 1)) {
+                costs[x] += weight;
+            }
+            for (int x = use[index].nextSetBit(0); x >= 0; x = use[index].nextSetBit(x + 1)) {
+                costs[x] += weight;
+            }
+        }
+        return costs;
+    }
+
+    private void addReport(Report report) {
+        // The other methods of the class may be reporting at the same time
+        synchronized (ollirResult.getReports()) {
+            ollirResult.getReports().add(report);
+        }
     }
 
     public InterferenceGraph getInterferenceGraph() {
@@ -295,43 +725,141 @@ public class MethodDataFlowAnalysis {
     }
 
 
-    public boolean eliminateDeadVars() {
-        boolean hasDeadVars = false;
-        ArrayList<Instruction> instructions = method.getInstructions();
-        ArrayList<Instruction> copyInstructions = new ArrayList<>(instructions);
-        for (Instruction instruction: copyInstructions) {
-            int index = nodeOrder.indexOf(instruction);
-
-            if (instruction instanceof AssignInstruction assignInstruction) {
-                String name = getElementName(assignInstruction.getDest());
-
-                if (name != null && def.get(index).contains(name) && !out.get(index).contains(name)) {
-                    List<Node> predecessors = instruction.getPredecessors();
-                    List<Node> successors = instruction.getSuccessors();
-
-                    for (Node predecessor: predecessors) {
-                        for (Node successor: successors) {
-                            predecessor.addSucc(successor);
-                            successor.addPred(predecessor);
-                        }
-                    }
-                    List<String> labels = method.getLabels(instruction);
+    private boolean isDeadAssignment(int index) {
+        if (!(nodeOrder.get(index) instanceof AssignInstruction assignInstruction)) return false;
 
-                    for (String label: labels) {
-                        method.getLabels().remove(label);
-                        for (Node successor: successors) {
-                            method.addLabel(label, (Instruction) successor);
-                        }
-                    }
+        String name = getElementName(assignInstruction.getDest());
+        return name != null && contains(def, index, name) && !contains(out, index, name);
+    }
+
+    private boolean eliminateDeadVarsIncrementally() {
+        int nodeCount = nodeOrder.size();
+        List<List<Integer>> definitions = new ArrayList<>();
+        for (int variable = 0; variable < variables.size(); variable++) {
+            definitions.add(new ArrayList<>());
+        }
+        for (int index = 0; index < nodeCount; index++) {
+            for (int x = def[index].nextSetBit(0); x >= 0; x = def[index].nextSetBit(x + 1)) {
+                definitions.get(x).add(index);
+            }
+        }
+
+        BitVector worklist = new BitVector(nodeCount);
+        for (int index = 0; index < nodeCount; index++) {
+            if (isDeadAssignment(index)) worklist.set(index);
+        }
 
-                    instructions.remove(instruction);
-                    hasDeadVars = true;
+        boolean hasDeadVars = false;
+        while (!worklist.isEmpty()) {
+            int index = worklist.nextSetBit(0);
+            worklist.clear(index);
+            if (!isDeadAssignment(index)) continue;
+
+            Instruction instruction = (Instruction) nodeOrder.get(index);
+            removeInstruction(instruction);
+            hasDeadVars = true;
+
+            // The removed node stays in the analysis as an empty node, which passes liveness through
+            BitVector usedVariables = use[index];
+            def[index] = new BitVector();
+            use[index] = new BitVector();
+
+            for (int x = usedVariables.nextSetBit(0); x >= 0; x = usedVariables.nextSetBit(x + 1)) {
+                calcLiveness(x);
+                for (int definition: definitions.get(x)) {
+                    if (isDeadAssignment(definition)) worklist.set(definition);
                 }
             }
         }
-        if (hasDeadVars) method.buildVarTable();
 
         return hasDeadVars;
     }
 
+    /**
+     * Computes the liveness of a single variable again, going backwards from the nodes that use it.
+     */
+    private void calcLiveness(int variable) {
+        int nodeCount = nodeOrder.size();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (int index = 0; index < nodeCount; index++) {
+            in[index].clear(variable);
+            out[index].clear(variable);
+            if (use[index].get(variable)) {
+                in[index].set(variable);
+                worklist.push(index);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.pop();
+            for (Node pred: nodeOrder.get(index).getPredecessors()) {
+                Integer predIndex = nodeIndexes.get(pred);
+                if (predIndex == null || out[predIndex].get(variable)) continue;
+
+                out[predIndex].set(variable);
+                if (!def[predIndex].get(variable) && !in[predIndex].get(variable)) {
+                    in[predIndex].set(variable);
+                    worklist.push(predIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an instruction from the method, linking its predecessors to its successors and moving its labels to its
+     * successors.
+     */
+    private void removeInstruction(Instruction instruction) {
+        List<Node> predecessors = instruction.getPredecessors();
+        List<Node> successors = instruction.getSuccessors();
+
+        for (Node predecessor: predecessors) {
+            for (Node successor: successors) {
+                predecessor.addSucc(successor);
+                successor.addPred(predecessor);
+            }
+        }
+        List<String> labels = method.getLabels(instruction);
+
+        for (String label: labels) {
+            method.getLabels().remove(label);
+            for (Node successor: successors) {
+                // A successor removed before still links to the instruction that replaced it
+                if (removedInstructions.contains(successor)) continue;
+                method.addLabel(label, (Instruction) successor);
+            }
+        }
+
+        method.getInstructions().remove(instruction);
+        removedInstructions.add(instruction);
+    }
+
+    /**
+     * Removes the jumps to the instruction right after them, which are left behind when the code between them is
+     * removed. A conditional one can be removed as well, as its condition has no side effects.
+     */
+    public void removeJumpsToNext() {
+        List<Instruction> instructions = method.getInstructions();
+        int index = 0;
+        while (index < instructions.size() - 1) {
+            Instruction instruction = instructions.get(index);
+            String label = null;
+            if (instruction instanceof GotoInstruction jump) label = jump.getLabel();
+            if (instruction instanceof CondBranchInstruction branch) label = branch.getLabel();
+
+            Instruction next = instructions.get(index + 1);
+            if (label == null || method.getLabels().get(label) != next) {
+                index++;
+                continue;
+            }
+
+            instructions.remove(index);
+            for (Map.Entry<String, Instruction> entry: method.getLabels().entrySet()) {
+                if (entry.getValue() == instruction) entry.setValue(next);
+            }
+            // The jump before this one may now jump to the next instruction too
+            if (index > 0) index--;
+        }
+    }
+
 }
@@ -0,0 +1,150 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * A natural loop of the CFG of a method: its header, which dominates the whole loop, and the nodes that reach a back
+ * edge to the header without going through it. The back edges to the same header make a single loop.
+ */
+public class NaturalLoop {
+
+    private final Node header;
+    private final Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Node> latches = new ArrayList<>();
+
+    private NaturalLoop(Node header) {
+        this.header = header;
+        nodes.add(header);
+    }
+
+    /**
+     * @return the loops of the method, each one before the loops that contain it
+     */
+    public static List<NaturalLoop> findLoops(DominatorTree dominatorTree) {
+        Map<Node, NaturalLoop> loops = new IdentityHashMap<>();
+        for (Node node: dominatorTree.getOrder()) {
+            for (Node succ: node.getSuccessors()) {
+                if (!dominatorTree.isReachable(succ) || !dominatorTree.dominates(succ, node)) continue;
+
+                NaturalLoop loop = loops.computeIfAbsent(succ, NaturalLoop::new);
+                if (!loop.latches.contains(node)) loop.addBackEdge(node, dominatorTree);
+            }
+        }
+
+        // A loop inside another one has fewer nodes
+        List<NaturalLoop> sortedLoops = new ArrayList<>(loops.values());
+        sortedLoops.sort(Comparator.comparingInt((NaturalLoop loop) -> loop.nodes.size())
+                .thenComparingInt(loop -> dominatorTree.getIndex(loop.header)));
+        return sortedLoops;
+    }
+
+    private void addBackEdge(Node latch, DominatorTree dominatorTree) {
+        latches.add(latch);
+        Deque<Node> worklist = new ArrayDeque<>();
+        if (nodes.add(latch)) worklist.push(latch);
+
+        while (!worklist.isEmpty()) {
+            for (Node pred: worklist.pop().getPredecessors()) {
+                if (dominatorTree.isReachable(pred) && nodes.add(pred)) worklist.push(pred);
+            }
+        }
+    }
+
+    public Node getHeader() {
+        return header;
+    }
+
+    public Set<Node> getNodes() {
+        return nodes;
+    }
+
+    public boolean contains(Node node) {
+        return nodes.contains(node);
+    }
+
+    /**
+     * @return the nodes with a back edge to the header
+     */
+    public List<Node> getLatches() {
+        return latches;
+    }
+
+    /**
+     * @return the predecessors of the header from outside the loop, with no duplicates
+     */
+    public List<Node> getEntries() {
+        List<Node> entries = new ArrayList<>();
+        for (Node pred: header.getPredecessors()) {
+            if (!nodes.contains(pred) && !entries.contains(pred)) entries.add(pred);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the only predecessor of the header from outside the loop, if the preheader can be placed on the edge from
+     * it to the header without splitting the edge, when it falls through to the header or jumps to it with a goto, or
+     * null otherwise
+     */
+    public Node getPreheaderEntry(Method method) {
+        List<Node> entries = getEntries();
+        if (entries.size() != 1 || !(header instanceof Instruction headerInstruction)) return null;
+
+        Node entry = entries.get(0);
+        if (entry.getNodeType() == NodeType.BEGIN) return indexOf(method, headerInstruction) == 0 ? entry : null;
+        if (entry instanceof GotoInstruction jump) {
+            return method.getLabels().get(jump.getLabel()) == header ? entry : null;
+        }
+        if (entry instanceof ReturnInstruction
+                || indexOf(method, (Instruction) entry) + 1 != indexOf(method, headerInstruction)) {
+            return null;
+        }
+        if (entry instanceof CondBranchInstruction branch && method.getLabels().get(branch.getLabel()) == header) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Places the instructions on the edge from the entry to the header, which starts at the given instruction in case
+     * the original one was moved.
+     */
+    public void insertPreheader(Method method, Node entry, Instruction start, List<Instruction> instructions) {
+        if (instructions.isEmpty()) return;
+
+        if (entry instanceof GotoInstruction jump) {
+            method.getInstructions().addAll(indexOf(method, jump), instructions);
+            // The jumps to the goto enter the loop too
+            for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+                if (label.getValue() == jump) label.setValue(instructions.get(0));
+            }
+        } else {
+            method.getInstructions().addAll(indexOf(method, start), instructions);
+        }
+    }
+
+    /**
+     * @return the nodes of the loop with a successor outside of it
+     */
+    public List<Node> getExits() {
+        List<Node> exits = new ArrayList<>();
+        for (Node node: nodes) {
+            for (Node succ: node.getSuccessors()) {
+                if (!nodes.contains(succ)) {
+                    exits.add(node);
+                    break;
+                }
+            }
+        }
+        return exits;
+    }
+
+    private static int indexOf(Method method, Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+}
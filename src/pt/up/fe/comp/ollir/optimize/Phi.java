@@ -0,0 +1,67 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Node;
+import org.specs.comp.ollir.Type;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A phi function of the SSA form, at the entry of a node of the CFG where several versions of a variable meet. It takes
+ * the version that reaches it from each predecessor.
+ */
+public class Phi {
+    private final String variable;
+    private final Node node;
+    private final Type type;
+    private String result;
+    private final Map<Node, Element> arguments;
+
+    public Phi(String variable, Node node, Type type) {
+        this.variable = variable;
+        this.node = node;
+        this.type = type;
+        this.arguments = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return the name of the variable before the SSA form
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public Element getArgument(Node predecessor) {
+        return arguments.get(predecessor);
+    }
+
+    public void setArgument(Node predecessor, Element argument) {
+        arguments.put(predecessor, argument);
+    }
+
+    public Map<Node, Element> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return result + " = phi(" + arguments.values() + ")";
+    }
+}
@@ -5,38 +5,52 @@ import java.util.Objects;
 
 public class RegisterNode {
     private final String name;
+    private final int index;
     private Integer register;
     private boolean isVisible;
     private final ArrayList<RegisterNode> edges;
+    // Kept up to date as the neighbors are hidden and shown again, instead of counting them every time
+    private int visibleNeighbors;
+    private double spillCost;
+    private RegisterNode coalescedInto;
 
-
-    public RegisterNode(String name) {
+    public RegisterNode(String name, int index) {
         this.name = name;
+        this.index = index;
         this.register = null;
         this.edges = new ArrayList<>();
         this.isVisible = true;
+        this.visibleNeighbors = 0;
     }
 
-    public void addEdge(RegisterNode r2) {
+    /**
+     * Only called by the {@link InterferenceGraph}, which makes sure that there are no duplicate edges.
+     */
+    void addEdge(RegisterNode r2) {
         edges.add(r2);
+        if (r2.isVisible()) visibleNeighbors++;
     }
 
-    public void removeEdge(RegisterNode r2) {
+    void removeEdge(RegisterNode r2) {
         edges.remove(r2);
+        if (r2.isVisible()) visibleNeighbors--;
     }
 
     public int countVisibleNeighbors() {
-        int count = 0;
-        for (RegisterNode r: edges) {
-            if (r.isVisible()) count++;
-        }
-        return count;
+        return visibleNeighbors;
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return the position of the node in its graph
+     */
+    public int getIndex() {
+        return index;
+    }
+
     public boolean isVisible() {
         return isVisible;
     }
@@ -57,23 +71,76 @@ public class RegisterNode {
         return Objects.equals(name, that.name);
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(name);
+    }
+
     public void setInvisible() {
+        if (!isVisible) return;
+
         isVisible = false;
+        for (RegisterNode r: edges) {
+            r.visibleNeighbors--;
+        }
     }
 
     public void setVisible() {
+        if (isVisible) return;
+
         isVisible = true;
+        for (RegisterNode r: edges) {
+            r.visibleNeighbors++;
+        }
     }
 
     public void setRegister(int reg) {
         register = reg;
     }
 
-    public boolean edgeFreeRegister(int reg) {
+    public void clearRegister() {
+        register = null;
+    }
+
+    /**
+     * @return the uses and definitions of the variable, weighted by the depth of the loops they are in
+     */
+    public double getSpillCost() {
+        return spillCost;
+    }
+
+    public void setSpillCost(double spillCost) {
+        this.spillCost = spillCost;
+    }
+
+    /**
+     * @return the node this one was coalesced into, following the chain of coalesced nodes, or itself
+     */
+    public RegisterNode getRepresentative() {
+        RegisterNode node = this;
+        while (node.coalescedInto != null) {
+            node = node.coalescedInto;
+        }
+        return node;
+    }
+
+    void setRepresentative(RegisterNode node) {
+        this.coalescedInto = node;
+    }
+
+    /**
+     * @return the lowest register from {@code from} onwards that no neighbor has
+     */
+    public int firstFreeRegister(int from) {
+        BitVector usedRegisters = new BitVector();
         for (RegisterNode r: edges) {
-            if (r.getRegister() != null
-                    && r.getRegister().equals(reg)) return false;
+            if (r.getRegister() != null && r.getRegister() >= from) {
+                usedRegisters.set(r.getRegister() - from);
+            }
         }
-        return true;
+
+        int reg = 0;
+        while (usedRegisters.get(reg)) reg++;
+        return from + reg;
     }
 }
@@ -0,0 +1,664 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.ollir.OllirUtils;
+
+import java.util.*;
+
+/**
+ * Static single assignment form of a method. Every assignment to a variable gets a version of its own, "a#1", "a#2",
+ * and so on, and a {@link Phi} joins the versions that reach the same node of the CFG from different paths. The value a
+ * variable has at the beginning of the method keeps the original name, which is only defined for the parameters.
+ * <p>
+ * The operands of the instructions are renamed in place, so the method stays valid OLLIR. The phis are kept here, on
+ * the side, until {@link #destruct()} turns them into copies on the edges that reach them.
+ */
+public class SsaForm {
+
+    private static final String VERSION_SEPARATOR = "#";
+    private static final String COPY_LABEL = "SSA_COPY_";
+
+    private final Method method;
+    private DominatorTree dominatorTree;
+    // The variables before the SSA form, with their types
+    private Map<String, Type> variables;
+    private Set<String> params;
+
+    private final Map<Node, List<Phi>> phis = new IdentityHashMap<>();
+    private final Map<String, Integer> versions = new HashMap<>();
+    private final Map<String, Deque<String>> currentVersions = new HashMap<>();
+    // The variable before the SSA form of each version
+    private final Map<String, String> originals = new HashMap<>();
+
+    private final Map<String, Instruction> definitions = new HashMap<>();
+    private final Map<String, Phi> phiDefinitions = new HashMap<>();
+    private final Map<String, List<Instruction>> instructionUses = new HashMap<>();
+    private final Map<String, List<Phi>> phiUses = new HashMap<>();
+    private int copyLabels = 0;
+
+    /**
+     * A copy from a phi argument to the result of the phi, to be placed on the edge from one of its predecessors.
+     */
+    private record Copy(Phi phi, Element source) {
+    }
+
+    public SsaForm(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Puts the method in SSA form, with pruned phis: those whose results are never used are removed.
+     *
+     * @return false if the method was left unchanged, because some operand is shared by more than one instruction and
+     * could not be renamed on its own
+     */
+    public boolean construct() {
+        OllirUtils.rebuildCFG(method);
+
+        variables = new HashMap<>();
+        for (Map.Entry<String, Descriptor> entry: method.getVarTable().entrySet()) {
+            if (entry.getKey().equals("this") || entry.getValue().getScope() == VarScope.FIELD) continue;
+            variables.put(entry.getKey(), entry.getValue().getVarType());
+        }
+        params = new HashSet<>();
+        for (Element param: method.getParams()) {
+            params.add(((Operand) param).getName());
+        }
+
+        if (hasSharedOperands()) return false;
+
+        dominatorTree = new DominatorTree(method);
+        placePhis();
+        rename();
+        removeDeadPhis();
+        return true;
+    }
+
+    /**
+     * Leaves the SSA form, replacing each phi with copies at the end of its predecessors. The copies of the same edge
+     * happen at the same time, so they are ordered to read each variable before it is overwritten, breaking the cycles
+     * between them with temporary variables. The versions joined by a phi that are never live at the same time are
+     * first given the same name, so that most phis need no copies at all.
+     */
+    public void destruct() {
+        coalesceVersions();
+
+        List<Runnable> placements = new ArrayList<>();
+
+        // The edges are found before placing any copy, as placing the copies changes the order of the instructions
+        for (Node node: dominatorTree.getOrder()) {
+            List<Phi> nodePhis = phis.get(node);
+            if (nodePhis == null) continue;
+
+            Set<Node> predecessors = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Node pred: node.getPredecessors()) {
+                // A return falls through to the next instruction in the CFG, but never really does
+                if (!dominatorTree.isReachable(pred) || pred instanceof ReturnInstruction || !predecessors.add(pred)) {
+                    continue;
+                }
+
+                if (pred.getNodeType() == NodeType.BEGIN) {
+                    List<Instruction> copies = sequentialize(nodePhis, pred);
+                    placements.add(() -> method.getInstructions().addAll(0, copies));
+                } else if (pred instanceof GotoInstruction jump) {
+                    List<Instruction> copies = sequentialize(nodePhis, pred);
+                    placements.add(() -> insertBefore(jump, copies));
+                } else if (pred instanceof CondBranchInstruction branch) {
+                    // Both edges of a branch can reach the same node
+                    if (method.getLabels().get(branch.getLabel()) == node) {
+                        List<Instruction> copies = sequentialize(nodePhis, pred);
+                        placements.add(() -> splitEdge(branch, copies));
+                    }
+                    if (nextInstruction(branch) == node) {
+                        List<Instruction> copies = sequentialize(nodePhis, pred);
+                        placements.add(() -> insertAfter(branch, copies));
+                    }
+                } else {
+                    List<Instruction> copies = sequentialize(nodePhis, pred);
+                    placements.add(() -> insertAfter((Instruction) pred, copies));
+                }
+            }
+        }
+
+        for (Runnable placement: placements) {
+            placement.run();
+        }
+
+        phis.clear();
+        method.getVarTable().clear();
+        method.buildVarTable();
+        OllirUtils.rebuildCFG(method);
+    }
+
+    /**
+     * Gives the same name to the versions of a variable that are joined by phis, as long as they are never live at the
+     * same time. Liveness is computed on the SSA form, where the arguments of a phi are live at the end of their
+     * predecessors and its result is assigned at the entry of its node.
+     */
+    private void coalesceVersions() {
+        List<Node> order = dominatorTree.getOrder();
+        int nodeCount = order.size();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+
+        BitVector[] use = new BitVector[nodeCount];
+        BitVector[] def = new BitVector[nodeCount];
+        BitVector[] phiDefs = new BitVector[nodeCount];
+        BitVector[] phiArgs = new BitVector[nodeCount];
+        for (int index = 0; index < nodeCount; index++) {
+            Node node = order.get(index);
+            use[index] = new BitVector();
+            def[index] = new BitVector();
+            phiDefs[index] = new BitVector();
+            phiArgs[index] = new BitVector();
+
+            if (node instanceof Instruction instruction) {
+                for (Operand operand: getUses(instruction)) {
+                    use[index].set(nameIndex(operand.getName(), indexes, names));
+                }
+                Operand dest = getDefinedOperand(instruction);
+                if (dest != null) def[index].set(nameIndex(dest.getName(), indexes, names));
+            }
+            for (Phi phi: getPhis(node)) {
+                phiDefs[index].set(nameIndex(phi.getResult(), indexes, names));
+            }
+            for (Node succ: node.getSuccessors()) {
+                for (Phi phi: getPhis(succ)) {
+                    if (phi.getArgument(node) instanceof Operand operand) {
+                        phiArgs[index].set(nameIndex(operand.getName(), indexes, names));
+                    }
+                }
+            }
+        }
+
+        BitVector[] in = new BitVector[nodeCount];
+        BitVector[] out = new BitVector[nodeCount];
+        for (int index = 0; index < nodeCount; index++) {
+            in[index] = new BitVector(names.size());
+            out[index] = new BitVector(names.size());
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int index = nodeCount - 1; index >= 0; index--) {
+                for (Node succ: order.get(index).getSuccessors()) {
+                    Integer succIndex = dominatorTree.getIndex(succ);
+                    if (succIndex != null) out[index].orAndNot(in[succIndex], phiDefs[succIndex]);
+                }
+                out[index].or(phiArgs[index]);
+
+                changed |= in[index].or(use[index]);
+                changed |= in[index].orAndNot(out[index], def[index]);
+            }
+        }
+
+        BitVector[] interference = new BitVector[names.size()];
+        for (int index = 0; index < names.size(); index++) {
+            interference[index] = new BitVector(names.size());
+        }
+        for (int index = 0; index < nodeCount; index++) {
+            for (int dest = def[index].nextSetBit(0); dest >= 0; dest = def[index].nextSetBit(dest + 1)) {
+                addInterference(interference, dest, out[index]);
+            }
+            for (int result = phiDefs[index].nextSetBit(0); result >= 0; result = phiDefs[index].nextSetBit(result + 1)) {
+                addInterference(interference, result, in[index]);
+                addInterference(interference, result, phiDefs[index]);
+            }
+        }
+        // The parameters are assigned before the first instruction
+        for (String param: params) {
+            Integer index = indexes.get(param);
+            if (index != null) addInterference(interference, index, out[0]);
+        }
+
+        List<List<Integer>> classes = new ArrayList<>();
+        int[] classOf = new int[names.size()];
+        for (int index = 0; index < names.size(); index++) {
+            classes.add(new ArrayList<>(List.of(index)));
+            classOf[index] = index;
+        }
+
+        for (Node node: order) {
+            for (Phi phi: getPhis(node)) {
+                for (Element argument: phi.getArguments().values()) {
+                    if (!(argument instanceof Operand operand)) continue;
+                    String name = operand.getName();
+                    if (!phi.getVariable().equals(originals.getOrDefault(name, name))) continue;
+                    if (variables.containsKey(name) && !params.contains(name)) continue;
+
+                    int resultClass = classOf[indexes.get(phi.getResult())];
+                    int argumentClass = classOf[indexes.get(name)];
+                    if (resultClass == argumentClass
+                            || interfere(interference, classes.get(resultClass), classes.get(argumentClass))) {
+                        continue;
+                    }
+
+                    for (int member: classes.get(argumentClass)) {
+                        classOf[member] = resultClass;
+                    }
+                    classes.get(resultClass).addAll(classes.get(argumentClass));
+                    classes.get(argumentClass).clear();
+                }
+            }
+        }
+
+        Map<String, String> newNames = new HashMap<>();
+        for (List<Integer> members: classes) {
+            if (members.size() < 2) continue;
+            // A parameter keeps its name, as its value comes from the caller
+            String newName = names.get(Collections.min(members));
+            for (int member: members) {
+                if (params.contains(names.get(member))) newName = names.get(member);
+            }
+            for (int member: members) {
+                newNames.put(names.get(member), newName);
+            }
+        }
+        if (newNames.isEmpty()) return;
+
+        for (Instruction instruction: method.getInstructions()) {
+            for (Operand operand: getUses(instruction)) {
+                operand.setName(newNames.getOrDefault(operand.getName(), operand.getName()));
+            }
+            Operand dest = getDefinedOperand(instruction);
+            if (dest != null) dest.setName(newNames.getOrDefault(dest.getName(), dest.getName()));
+        }
+        for (List<Phi> nodePhis: phis.values()) {
+            for (Phi phi: nodePhis) {
+                phi.setResult(newNames.getOrDefault(phi.getResult(), phi.getResult()));
+                phi.getArguments().replaceAll((pred, argument) -> argument instanceof Operand operand
+                        && newNames.containsKey(operand.getName())
+                        ? new Operand(newNames.get(operand.getName()), operand.getType())
+                        : argument);
+            }
+        }
+    }
+
+    private static int nameIndex(String name, Map<String, Integer> indexes, List<String> names) {
+        return indexes.computeIfAbsent(name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+    }
+
+    private static void addInterference(BitVector[] interference, int variable, BitVector live) {
+        for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+            if (other == variable) continue;
+            interference[variable].set(other);
+            interference[other].set(variable);
+        }
+    }
+
+    private static boolean interfere(BitVector[] interference, List<Integer> first, List<Integer> second) {
+        for (int member: first) {
+            for (int other: second) {
+                if (interference[member].get(other)) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasSharedOperands() {
+        Set<Operand> operands = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instruction: method.getInstructions()) {
+            for (Operand use: getUses(instruction)) {
+                if (!operands.add(use)) return true;
+            }
+            Operand dest = getDefinedOperand(instruction);
+            if (dest != null && !operands.add(dest)) return true;
+        }
+        return false;
+    }
+
+    private boolean isVariable(Element element) {
+        if (!(element instanceof Operand operand)) return false;
+        ElementType type = operand.getType().getTypeOfElement();
+        return type != ElementType.THIS && type != ElementType.CLASS
+                && (variables.containsKey(operand.getName()) || originals.containsKey(operand.getName()));
+    }
+
+    /**
+     * @return the operand of the variable assigned by the instruction, or null if it does not assign a variable
+     */
+    public Operand getDefinedOperand(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && isVariable(assign.getDest())) {
+            return (Operand) assign.getDest();
+        }
+        return null;
+    }
+
+    /**
+     * @return the operands of the variables read by the instruction, in the same places as the liveness analysis
+     */
+    public List<Operand> getUses(Instruction instruction) {
+        List<Operand> uses = new ArrayList<>();
+        addUses(instruction, uses);
+        return uses;
+    }
+
+    private void addUses(Instruction instruction, List<Operand> uses) {
+        if (instruction instanceof AssignInstruction assign) {
+            // Storing to an element reads the array reference
+            if (assign.getDest() instanceof ArrayOperand) addUse(assign.getDest(), uses);
+            addUses(assign.getRhs(), uses);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            addUse(unaryOp.getOperand(), uses);
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            addUse(binaryOp.getLeftOperand(), uses);
+            addUse(binaryOp.getRightOperand(), uses);
+        } else if (instruction instanceof ReturnInstruction returnInstruction) {
+            addUse(returnInstruction.getOperand(), uses);
+        } else if (instruction instanceof CallInstruction call) {
+            addUse(call.getFirstArg(), uses);
+            if (call.getListOfOperands() != null) {
+                for (Element arg: call.getListOfOperands()) {
+                    addUse(arg, uses);
+                }
+            }
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            addUse(getField.getFirstOperand(), uses);
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            addUse(putField.getFirstOperand(), uses);
+            addUse(putField.getThirdOperand(), uses);
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            addUse(singleOp.getSingleOperand(), uses);
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            for (Element operand: branch.getOperands()) {
+                addUse(operand, uses);
+            }
+        }
+    }
+
+    private void addUse(Element element, List<Operand> uses) {
+        if (element instanceof ArrayOperand array) {
+            for (Element index: array.getIndexOperands()) {
+                addUse(index, uses);
+            }
+        }
+        if (isVariable(element)) uses.add((Operand) element);
+    }
+
+    /**
+     * Places the phis of each variable on the iterated dominance frontier of its assignments.
+     */
+    private void placePhis() {
+        Map<String, List<Node>> defSites = new TreeMap<>();
+        for (Node node: dominatorTree.getOrder()) {
+            if (!(node instanceof Instruction instruction)) continue;
+            Operand dest = getDefinedOperand(instruction);
+            if (dest != null) defSites.computeIfAbsent(dest.getName(), name -> new ArrayList<>()).add(node);
+        }
+
+        for (Map.Entry<String, List<Node>> entry: defSites.entrySet()) {
+            String variable = entry.getKey();
+            Set<Node> hasPhi = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<Node> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+            queued.addAll(entry.getValue());
+            Deque<Node> worklist = new ArrayDeque<>(entry.getValue());
+
+            while (!worklist.isEmpty()) {
+                for (Node frontier: dominatorTree.getDominanceFrontier(worklist.pop())) {
+                    // Nothing is read after the end of the method
+                    if (frontier.getNodeType() == NodeType.END || !hasPhi.add(frontier)) continue;
+
+                    phis.computeIfAbsent(frontier, node -> new ArrayList<>())
+                            .add(new Phi(variable, frontier, variables.get(variable)));
+                    if (queued.add(frontier)) worklist.push(frontier);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renames the variables walking the dominator tree, where the version of a variable that reaches a node is the
+     * last one defined on the path from the root. The tree is walked with a stack, as it is as deep as the method is
+     * long.
+     */
+    private void rename() {
+        Map<Node, List<String>> defined = new IdentityHashMap<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(method.getBeginNode());
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+
+            // Leaving the subtree of the node, so its versions are no longer visible
+            List<String> definedVariables = defined.remove(node);
+            if (definedVariables != null) {
+                for (String variable: definedVariables) {
+                    currentVersions.get(variable).pop();
+                }
+                continue;
+            }
+
+            definedVariables = new ArrayList<>();
+            for (Phi phi: phis.getOrDefault(node, List.of())) {
+                String result = pushVersion(phi.getVariable());
+                phi.setResult(result);
+                phiDefinitions.put(result, phi);
+                definedVariables.add(phi.getVariable());
+            }
+
+            if (node instanceof Instruction instruction) {
+                for (Operand use: getUses(instruction)) {
+                    use.setName(currentVersion(use.getName()));
+                    instructionUses.computeIfAbsent(use.getName(), name -> new ArrayList<>()).add(instruction);
+                }
+
+                Operand dest = getDefinedOperand(instruction);
+                if (dest != null) {
+                    String variable = dest.getName();
+                    dest.setName(pushVersion(variable));
+                    definitions.put(dest.getName(), instruction);
+                    definedVariables.add(variable);
+                }
+            }
+
+            for (Node succ: node.getSuccessors()) {
+                for (Phi phi: phis.getOrDefault(succ, List.of())) {
+                    phi.setArgument(node, new Operand(currentVersion(phi.getVariable()), phi.getType()));
+                }
+            }
+
+            defined.put(node, definedVariables);
+            stack.push(node);
+            for (Node child: dominatorTree.getChildren(node)) {
+                stack.push(child);
+            }
+        }
+    }
+
+    private String newVersion(String variable) {
+        String version;
+        do {
+            version = variable + VERSION_SEPARATOR + versions.merge(variable, 1, Integer::sum);
+        } while (variables.containsKey(version));
+        originals.put(version, variable);
+        return version;
+    }
+
+    private String pushVersion(String variable) {
+        String version = newVersion(variable);
+        currentVersions.computeIfAbsent(variable, name -> new ArrayDeque<>()).push(version);
+        return version;
+    }
+
+    private String currentVersion(String variable) {
+        Deque<String> stack = currentVersions.get(variable);
+        return stack == null || stack.isEmpty() ? variable : stack.peek();
+    }
+
+    /**
+     * Removes the phis whose results are not used by any instruction, directly or through other phis.
+     */
+    private void removeDeadPhis() {
+        Set<Phi> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Phi> worklist = new ArrayDeque<>();
+        for (String name: instructionUses.keySet()) {
+            Phi phi = phiDefinitions.get(name);
+            if (phi != null && live.add(phi)) worklist.push(phi);
+        }
+
+        while (!worklist.isEmpty()) {
+            for (Element argument: worklist.pop().getArguments().values()) {
+                if (!(argument instanceof Operand operand)) continue;
+                Phi phi = phiDefinitions.get(operand.getName());
+                if (phi != null && live.add(phi)) worklist.push(phi);
+            }
+        }
+
+        phis.values().forEach(nodePhis -> nodePhis.removeIf(phi -> !live.contains(phi)));
+        phis.values().removeIf(List::isEmpty);
+        phiDefinitions.values().removeIf(phi -> !live.contains(phi));
+
+        for (Phi phi: live) {
+            for (Element argument: phi.getArguments().values()) {
+                if (argument instanceof Operand operand) {
+                    phiUses.computeIfAbsent(operand.getName(), name -> new ArrayList<>()).add(phi);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the copies of the phis for the edge from the predecessor, in an order that reads every variable before
+     * writing it
+     */
+    private List<Instruction> sequentialize(List<Phi> nodePhis, Node pred) {
+        List<Copy> pending = new ArrayList<>();
+        for (Phi phi: nodePhis) {
+            Element argument = phi.getArgument(pred);
+            if (argument == null) continue;
+            if (argument instanceof Operand operand) {
+                if (operand.getName().equals(phi.getResult())) continue;
+                // A local variable that is not assigned on the path has no value to copy
+                if (variables.containsKey(operand.getName()) && !params.contains(operand.getName())) continue;
+            }
+            pending.add(new Copy(phi, argument));
+        }
+
+        List<Instruction> copies = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            Copy ready = null;
+            for (Copy copy: pending) {
+                if (pending.stream().noneMatch(other -> readsVariable(other, copy.phi().getResult()))) {
+                    ready = copy;
+                    break;
+                }
+            }
+
+            if (ready != null) {
+                copies.add(createCopy(ready.phi().getResult(), ready.source(), ready.phi().getType()));
+                pending.remove(ready);
+                continue;
+            }
+
+            // Only cycles are left, so one of the variables is saved before it is overwritten
+            Phi phi = pending.get(0).phi();
+            String temporary = newVersion(phi.getVariable());
+            copies.add(createCopy(temporary, new Operand(phi.getResult(), phi.getType()), phi.getType()));
+            pending.replaceAll(copy -> readsVariable(copy, phi.getResult())
+                    ? new Copy(copy.phi(), new Operand(temporary, phi.getType()))
+                    : copy);
+        }
+        return copies;
+    }
+
+    private static boolean readsVariable(Copy copy, String variable) {
+        return copy.source() instanceof Operand operand && operand.getName().equals(variable);
+    }
+
+    private static Instruction createCopy(String dest, Element source, Type type) {
+        // Each instruction gets operands of its own, so that they can be renamed on their own
+        Element sourceCopy = source instanceof LiteralElement literal
+                ? new LiteralElement(literal.getLiteral(), literal.getType())
+                : new Operand(((Operand) source).getName(), source.getType());
+        return new AssignInstruction(new Operand(dest, type), type, new SingleOpInstruction(sourceCopy));
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+
+    private Instruction nextInstruction(Instruction instruction) {
+        int index = indexOf(instruction) + 1;
+        return index < method.getInstructions().size() ? method.getInstructions().get(index) : null;
+    }
+
+    private void insertAfter(Instruction instruction, List<Instruction> copies) {
+        method.getInstructions().addAll(indexOf(instruction) + 1, copies);
+    }
+
+    /**
+     * Places the copies before a goto, which takes them as part of its block by giving them its labels.
+     */
+    private void insertBefore(GotoInstruction jump, List<Instruction> copies) {
+        if (copies.isEmpty()) return;
+        method.getInstructions().addAll(indexOf(jump), copies);
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (label.getValue() == jump) label.setValue(copies.get(0));
+        }
+    }
+
+    /**
+     * Places the copies on a block of their own at the end of the method, that the branch jumps to before going to its
+     * original target, as they must not happen when the branch is not taken.
+     */
+    private void splitEdge(CondBranchInstruction branch, List<Instruction> copies) {
+        if (copies.isEmpty()) return;
+
+        String label;
+        do {
+            label = COPY_LABEL + copyLabels++;
+        } while (method.getLabels().containsKey(label));
+
+        method.getInstructions().addAll(copies);
+        method.getInstructions().add(new GotoInstruction(branch.getLabel()));
+        method.addLabel(label, copies.get(0));
+        branch.setLabel(label);
+    }
+
+    public DominatorTree getDominatorTree() {
+        return dominatorTree;
+    }
+
+    /**
+     * @return the phis at the entry of the node, which is empty if it has none
+     */
+    public List<Phi> getPhis(Node node) {
+        return phis.getOrDefault(node, List.of());
+    }
+
+    public Collection<List<Phi>> getAllPhis() {
+        return phis.values();
+    }
+
+    /**
+     * @return the instruction that assigns the version, or null if it is assigned by a phi or at the beginning of the
+     * method
+     */
+    public Instruction getDefinition(String version) {
+        return definitions.get(version);
+    }
+
+    public Phi getPhiDefinition(String version) {
+        return phiDefinitions.get(version);
+    }
+
+    /**
+     * @return the instructions that read the version, once for each operand
+     */
+    public List<Instruction> getInstructionUses(String version) {
+        return instructionUses.getOrDefault(version, List.of());
+    }
+
+    public List<Phi> getPhiUses(String version) {
+        return phiUses.getOrDefault(version, List.of());
+    }
+}
@@ -0,0 +1,292 @@
+package pt.up.fe.comp.ollir.optimize;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.ollir.OllirUtils;
+
+import java.util.*;
+
+/**
+ * Strength reduction of the multiplications of induction variables in loops. A basic induction variable is assigned
+ * only once in its loop, adding a constant to itself, as in {@code i = i + 1}. Its product by a value that does not
+ * change in the loop is kept in a new variable instead, computed before the loop and increased right after the
+ * induction variable by the constant times that value, which becomes an iinc when it is small.
+ * <p>
+ * The induction variables that are then only read to update themselves are removed over the SSA form, where they are
+ * cycles of phis and additions that the dead code elimination keeps alive, as each one reads the other.
+ */
+public class StrengthReduction {
+
+    private static final String VARIABLE_PREFIX = "iv_";
+    private static final Type INT_TYPE = new Type(ElementType.INT32);
+
+    private final Method method;
+    private int variables = 0;
+
+    /**
+     * A product of an induction variable, by a factor given as the name of a variable or a literal.
+     */
+    private record Product(String variable, String factor) {
+    }
+
+    public StrengthReduction(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * @return whether the method changed
+     */
+    public boolean run() {
+        boolean changed = false;
+        // A reduction can leave a multiplication before its loop, in a loop around it
+        while (reduceNextLoop()) {
+            changed = true;
+        }
+        changed |= removeDeadInductionVariables();
+        return changed;
+    }
+
+    private boolean reduceNextLoop() {
+        OllirUtils.rebuildCFG(method);
+        for (NaturalLoop loop: NaturalLoop.findLoops(new DominatorTree(method))) {
+            if (reduce(loop)) return true;
+        }
+        return false;
+    }
+
+    private boolean reduce(NaturalLoop loop) {
+        Node entry = loop.getPreheaderEntry(method);
+        if (entry == null) return false;
+
+        List<Instruction> body = method.getInstructions().stream().filter(loop::contains).toList();
+        Map<String, List<AssignInstruction>> definitions = new HashMap<>();
+        for (Instruction instruction: body) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                definitions.computeIfAbsent(((Operand) assign.getDest()).getName(), name -> new ArrayList<>()).add(assign);
+            }
+        }
+
+        // The header can be one of the multiplications that are replaced
+        Instruction start = (Instruction) loop.getHeader();
+        Map<Product, String> products = new HashMap<>();
+        List<Instruction> preheader = new ArrayList<>();
+        Map<AssignInstruction, List<Instruction>> updates = new IdentityHashMap<>();
+        for (Instruction instruction: body) {
+            if (!(instruction instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction binaryOp)
+                    || binaryOp.getOperation().getOpType() != OperationType.MUL) {
+                continue;
+            }
+
+            Element variable = binaryOp.getLeftOperand();
+            Element factor = binaryOp.getRightOperand();
+            if (getStep(variable, definitions) == null || !isInvariant(factor, definitions)) {
+                variable = binaryOp.getRightOperand();
+                factor = binaryOp.getLeftOperand();
+            }
+            Integer step = getStep(variable, definitions);
+            if (step == null || !isInvariant(factor, definitions)) continue;
+
+            String variableName = ((Operand) variable).getName();
+            Product product = new Product(variableName, getName(factor));
+            String reduced = products.get(product);
+            if (reduced == null) {
+                reduced = newVariable();
+                products.put(product, reduced);
+                preheader.add(createAssign(reduced, new BinaryOpInstruction(new Operand(variableName, INT_TYPE),
+                        new Operation(OperationType.MUL, INT_TYPE), copyOf(factor))));
+
+                Element increment = getIncrement(step, factor, preheader);
+                updates.computeIfAbsent(definitions.get(variableName).get(0), update -> new ArrayList<>())
+                        .add(createAssign(reduced, new BinaryOpInstruction(new Operand(reduced, INT_TYPE),
+                                new Operation(OperationType.ADD, INT_TYPE), increment)));
+            }
+
+            Instruction copy = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(new Operand(reduced, INT_TYPE)));
+            replaceInstruction(assign, copy);
+            if (assign == start) start = copy;
+        }
+        if (products.isEmpty()) return false;
+
+        // The new variables always hold their products, as they change right after the induction variables do
+        for (Map.Entry<AssignInstruction, List<Instruction>> update: updates.entrySet()) {
+            method.getInstructions().addAll(indexOf(update.getKey()) + 1, update.getValue());
+        }
+        loop.insertPreheader(method, entry, start, preheader);
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+        return true;
+    }
+
+    /**
+     * @return the constant added to the element on every update, if it is a basic induction variable of the loop, or
+     * null otherwise
+     */
+    static Integer getStep(Element element, Map<String, List<AssignInstruction>> definitions) {
+        if (!(element instanceof Operand operand) || element instanceof ArrayOperand
+                || operand.getType().getTypeOfElement() != ElementType.INT32) {
+            return null;
+        }
+
+        List<AssignInstruction> assigns = definitions.get(operand.getName());
+        if (assigns == null || assigns.size() != 1
+                || !(assigns.get(0).getRhs() instanceof BinaryOpInstruction binaryOp)) {
+            return null;
+        }
+
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+        return switch (binaryOp.getOperation().getOpType()) {
+            case ADD -> {
+                if (isVariable(left, operand.getName()) && right instanceof LiteralElement literal) {
+                    yield Integer.parseInt(literal.getLiteral());
+                }
+                if (left instanceof LiteralElement literal && isVariable(right, operand.getName())) {
+                    yield Integer.parseInt(literal.getLiteral());
+                }
+                yield null;
+            }
+            case SUB -> isVariable(left, operand.getName()) && right instanceof LiteralElement literal
+                    ? -Integer.parseInt(literal.getLiteral())
+                    : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return element instanceof Operand operand && !(element instanceof ArrayOperand) && operand.getName().equals(name);
+    }
+
+    static boolean isInvariant(Element element, Map<String, List<AssignInstruction>> definitions) {
+        if (element instanceof LiteralElement) return true;
+        return element instanceof Operand operand && !(element instanceof ArrayOperand)
+                && operand.getType().getTypeOfElement() == ElementType.INT32
+                && !definitions.containsKey(operand.getName());
+    }
+
+    /**
+     * @return what the product increases by on every update of the induction variable, computing it before the loop
+     * when it is not a constant
+     */
+    private Element getIncrement(int step, Element factor, List<Instruction> preheader) {
+        if (factor instanceof LiteralElement literal) {
+            return new LiteralElement(String.valueOf(step * Integer.parseInt(literal.getLiteral())), INT_TYPE);
+        }
+        if (step == 1) return copyOf(factor);
+
+        String increment = newVariable();
+        preheader.add(createAssign(increment, new BinaryOpInstruction(copyOf(factor),
+                new Operation(OperationType.MUL, INT_TYPE), new LiteralElement(String.valueOf(step), INT_TYPE))));
+        return new Operand(increment, INT_TYPE);
+    }
+
+    private static String getName(Element element) {
+        return element instanceof LiteralElement literal ? literal.getLiteral() : ((Operand) element).getName();
+    }
+
+    /**
+     * Each instruction gets operands of its own, so that they can be renamed on their own.
+     */
+    private static Element copyOf(Element element) {
+        return element instanceof LiteralElement literal
+                ? new LiteralElement(literal.getLiteral(), INT_TYPE)
+                : new Operand(((Operand) element).getName(), INT_TYPE);
+    }
+
+    private static AssignInstruction createAssign(String dest, Instruction rhs) {
+        return new AssignInstruction(new Operand(dest, INT_TYPE), INT_TYPE, rhs);
+    }
+
+    private String newVariable() {
+        String name;
+        do {
+            name = VARIABLE_PREFIX + variables++;
+        } while (method.getVarTable().containsKey(name));
+        return name;
+    }
+
+    /**
+     * Removes the assignments with no side effects whose values are only read by other such assignments, marking as
+     * live the versions read by the rest of the instructions, and then the versions those are computed from.
+     */
+    private boolean removeDeadInductionVariables() {
+        SsaForm ssaForm = new SsaForm(method);
+        if (!ssaForm.construct()) return false;
+
+        Set<String> live = new HashSet<>();
+        Deque<String> worklist = new ArrayDeque<>();
+        for (Instruction instruction: method.getInstructions()) {
+            if (isRemovable(instruction, ssaForm)) continue;
+            for (Operand use: ssaForm.getUses(instruction)) {
+                if (live.add(use.getName())) worklist.push(use.getName());
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            String version = worklist.pop();
+            List<Element> operands = new ArrayList<>();
+            Instruction definition = ssaForm.getDefinition(version);
+            Phi phiDefinition = ssaForm.getPhiDefinition(version);
+            if (definition != null) operands.addAll(ssaForm.getUses(definition));
+            if (phiDefinition != null) operands.addAll(phiDefinition.getArguments().values());
+
+            for (Element operand: operands) {
+                if (operand instanceof Operand use && live.add(use.getName())) worklist.push(use.getName());
+            }
+        }
+
+        Set<Instruction> dead = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Instruction instruction: method.getInstructions()) {
+            if (isRemovable(instruction, ssaForm) && !live.contains(ssaForm.getDefinedOperand(instruction).getName())) {
+                dead.add(instruction);
+            }
+        }
+        for (List<Phi> nodePhis: ssaForm.getAllPhis()) {
+            nodePhis.removeIf(phi -> !live.contains(phi.getResult()));
+        }
+        ssaForm.destruct();
+
+        if (dead.isEmpty()) return false;
+
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            Instruction target = label.getValue();
+            int index = indexOf(target);
+            while (dead.contains(target)) {
+                target = method.getInstructions().get(++index);
+            }
+            label.setValue(target);
+        }
+        method.getInstructions().removeIf(dead::contains);
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+        OllirUtils.rebuildCFG(method);
+        return true;
+    }
+
+    private static boolean isRemovable(Instruction instruction, SsaForm ssaForm) {
+        if (!(instruction instanceof AssignInstruction assign) || ssaForm.getDefinedOperand(assign) == null) {
+            return false;
+        }
+
+        Instruction rhs = assign.getRhs();
+        return rhs instanceof BinaryOpInstruction || rhs instanceof UnaryOpInstruction
+                || rhs instanceof SingleOpInstruction singleOp && !(singleOp.getSingleOperand() instanceof ArrayOperand);
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            if (instructions.get(index) == instruction) return index;
+        }
+        throw new RuntimeException("Instruction not found in method " + method.getMethodName());
+    }
+
+    private void replaceInstruction(Instruction instruction, Instruction replacement) {
+        method.getInstructions().set(indexOf(instruction), replacement);
+        for (Map.Entry<String, Instruction> label: method.getLabels().entrySet()) {
+            if (label.getValue() == instruction) label.setValue(replacement);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package pt.up.fe.comp.stats;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Wall time, CPU time, allocated bytes and fixpoint iterations of each compilation stage.
+ * <p>
+ * The stages record themselves through the static {@link #measure} and {@link #addIterations} methods into the stats
+ * started on the current thread, and do nothing when there are none, so the stages don't need to pass them around.
+ */
+public class CompilationStats {
+
+    private static final ThreadLocal<CompilationStats> current = new ThreadLocal<>();
+    private static final ThreadLocal<PipelineStage> currentStage = new ThreadLocal<>();
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final Map<PipelineStage, StageStats> stages = new EnumMap<>(PipelineStage.class);
+
+    /**
+     * Records the stages run by the current thread into these stats, until {@link #stop()} is called.
+     */
+    public void start() {
+        current.set(this);
+    }
+
+    public void stop() {
+        current.remove();
+    }
+
+    public static <T> T measure(PipelineStage stage, Supplier<T> action) {
+        CompilationStats stats = current.get();
+        if (stats == null) return action.get();
+
+        PipelineStage previousStage = currentStage.get();
+        currentStage.set(stage);
+        long wallStart = System.nanoTime();
+        long cpuStart = cpuTime();
+        long allocatedStart = allocatedBytes();
+        try {
+            return action.get();
+        } finally {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = cpuTime() - cpuStart;
+            long allocated = allocatedBytes() - allocatedStart;
+            synchronized (stats) {
+                stats.getStage(stage).addRun(wall, cpu, allocated);
+            }
+            setStage(previousStage);
+        }
+    }
+
+    public static void run(PipelineStage stage, Runnable action) {
+        measure(stage, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static void addIterations(PipelineStage stage, long iterations) {
+        CompilationStats stats = current.get();
+        if (stats == null) return;
+
+        synchronized (stats) {
+            stats.getStage(stage).addIterations(iterations);
+        }
+    }
+
+    /**
+     * Wraps an action that is run on other threads (e.g. by a parallel stream) so that it records into the stats of
+     * the current thread. The CPU time and allocations of the other threads are added to the stage being measured,
+     * which only measures the current thread itself.
+     */
+    public static <T> Consumer<T> propagate(Consumer<T> action) {
+        CompilationStats stats = current.get();
+        if (stats == null) return action;
+
+        PipelineStage stage = currentStage.get();
+        return value -> runOnWorker(stats, stage, () -> {
+            action.accept(value);
+            return null;
+        });
+    }
+
+    /**
+     * Same as {@link #propagate(Consumer)}, for actions that return a value (e.g. the mapping of a parallel stream).
+     */
+    public static <T, R> Function<T, R> propagateFunction(Function<T, R> action) {
+        CompilationStats stats = current.get();
+        if (stats == null) return action;
+
+        PipelineStage stage = currentStage.get();
+        return value -> runOnWorker(stats, stage, () -> action.apply(value));
+    }
+
+    private static <R> R runOnWorker(CompilationStats stats, PipelineStage stage, Supplier<R> action) {
+        CompilationStats previous = current.get();
+        PipelineStage previousStage = currentStage.get();
+        // The calling thread can run some of the actions itself, and its share is already measured
+        boolean measured = previous == stats;
+        long cpuStart = cpuTime();
+        long allocatedStart = allocatedBytes();
+        current.set(stats);
+        currentStage.set(stage);
+        try {
+            return action.get();
+        } finally {
+            if (!measured && stage != null) {
+                long cpu = cpuTime() - cpuStart;
+                long allocated = allocatedBytes() - allocatedStart;
+                synchronized (stats) {
+                    stats.getStage(stage).addWork(cpu, allocated);
+                }
+            }
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+            setStage(previousStage);
+        }
+    }
+
+    private static void setStage(PipelineStage stage) {
+        if (stage == null) {
+            currentStage.remove();
+        } else {
+            currentStage.set(stage);
+        }
+    }
+
+    private static long cpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean sunThreadBean
+                && sunThreadBean.isThreadAllocatedMemorySupported()) {
+            return sunThreadBean.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private StageStats getStage(PipelineStage stage) {
+        return stages.computeIfAbsent(stage, s -> new StageStats());
+    }
+
+    /**
+     * @return the stats of the stage, or null if it was never run
+     */
+    public synchronized StageStats get(PipelineStage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Adds the stats of another compilation to these. Safe to call from several threads at once.
+     */
+    public synchronized void merge(CompilationStats other) {
+        synchronized (other) {
+            other.stages.forEach((stage, stageStats) -> getStage(stage).merge(stageStats));
+        }
+    }
+
+    private StageStats total() {
+        StageStats total = new StageStats();
+        stages.values().forEach(total::merge);
+        return total;
+    }
+
+    public synchronized String toTable() {
+        StringBuilder table = new StringBuilder();
+        String format = "%-20s %6s %10s %12s %12s %14s%n";
+        table.append(String.format(Locale.ROOT, format, "Stage", "Runs", "Iterations", "Wall (ms)", "CPU (ms)",
+                "Alloc (KB)"));
+
+        stages.forEach((stage, stageStats) -> appendRow(table, format, stage.getName(), stageStats));
+        appendRow(table, format, "Total", total());
+
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, String format, String name, StageStats stats) {
+        table.append(String.format(Locale.ROOT, format, name, stats.getRuns(), stats.getIterations(),
+                String.format(Locale.ROOT, "%.3f", stats.getWallNanos() / 1e6),
+                String.format(Locale.ROOT, "%.3f", stats.getCpuNanos() / 1e6),
+                String.format(Locale.ROOT, "%.1f", stats.getAllocatedBytes() / 1024.0)));
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"stages\": [");
+
+        String separator = "\n";
+        for (var entry: stages.entrySet()) {
+            json.append(separator).append("    {\"stage\": \"").append(entry.getKey().name().toLowerCase())
+                    .append("\", ").append(jsonFields(entry.getValue())).append("}");
+            separator = ",\n";
+        }
+
+        json.append("\n  ],\n  \"total\": {").append(jsonFields(total())).append("}\n}");
+        return json.toString();
+    }
+
+    private static String jsonFields(StageStats stats) {
+        return "\"runs\": " + stats.getRuns()
+                + ", \"iterations\": " + stats.getIterations()
+                + ", \"wallNanos\": " + stats.getWallNanos()
+                + ", \"cpuNanos\": " + stats.getCpuNanos()
+                + ", \"allocatedBytes\": " + stats.getAllocatedBytes();
+    }
+}
@@ -0,0 +1,24 @@
+package pt.up.fe.comp.stats;
+
+public enum PipelineStage {
+    PARSE("Parse"),
+    SEMANTIC_ANALYSIS("Semantic analysis"),
+    AST_OPTIMIZATION("AST optimization"),
+    OLLIR_GENERATION("OLLIR generation"),
+    OLLIR_PARSE("OLLIR parse"),
+    SSA_OPTIMIZATION("SSA optimization"),
+    DATAFLOW("Dataflow analysis"),
+    REGISTER_ALLOCATION("Register allocation"),
+    JASMIN_GENERATION("Jasmin generation"),
+    ASSEMBLY("Assembly");
+
+    private final String name;
+
+    PipelineStage(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
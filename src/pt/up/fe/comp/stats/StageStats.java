@@ -0,0 +1,65 @@
+package pt.up.fe.comp.stats;
+
+public class StageStats {
+    private int runs = 0;
+    private long iterations = 0;
+    private long wallNanos = 0;
+    private long cpuNanos = 0;
+    private long allocatedBytes = 0;
+
+    void addRun(long wallNanos, long cpuNanos, long allocatedBytes) {
+        this.runs++;
+        this.wallNanos += wallNanos;
+        this.cpuNanos += cpuNanos;
+        this.allocatedBytes += allocatedBytes;
+    }
+
+    /**
+     * Adds the CPU time and allocations of another thread that worked on a run of the stage.
+     */
+    void addWork(long cpuNanos, long allocatedBytes) {
+        this.cpuNanos += cpuNanos;
+        this.allocatedBytes += allocatedBytes;
+    }
+
+    void addIterations(long iterations) {
+        this.iterations += iterations;
+    }
+
+    void merge(StageStats other) {
+        this.runs += other.runs;
+        this.iterations += other.iterations;
+        this.wallNanos += other.wallNanos;
+        this.cpuNanos += other.cpuNanos;
+        this.allocatedBytes += other.allocatedBytes;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return the number of fixpoint iterations run by the stage (0 for stages without a fixpoint)
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return the CPU time of the threads that ran the stage, or 0 if the JVM does not support measuring it
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * @return the bytes allocated by the threads that ran the stage, or 0 if the JVM does not support measuring them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
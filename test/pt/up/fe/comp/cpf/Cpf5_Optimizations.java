@@ -232,8 +232,9 @@ public class Cpf5_Optimizations {
                 original.getJasminCode(), optimized.getJasminCode(),
                 optimized);
 
+        // 'arg' is never read, so a, b, c and d reuse its register and only 'this' needs another one
         String method = CpUtils.getJasminMethod(optimized, "soManyRegisters");
-        CpUtils.matches(method, "\\.limit\\s+locals\\s+3");
+        CpUtils.matches(method, "\\.limit\\s+locals\\s+2");
     }
 
     @Test
@@ -13,18 +13,24 @@
 
 package pt.up.fe.comp.custom;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.specs.comp.ollir.*;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.ollir.OllirUtils;
+import pt.up.fe.comp.ollir.Optimizer;
+import pt.up.fe.comp.ollir.optimize.MethodDataFlowAnalysis;
 import pt.up.fe.specs.util.SpecsIo;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.function.Consumer;
 
 
 public class CustomTestsOptimizations {
@@ -53,6 +59,13 @@ public class CustomTestsOptimizations {
         return TestUtils.backend(SpecsIo.getResource("fixtures/custom/" + filename + ".jmm"), config);
     }
 
+    static JasminResult getJasminResultLinearScan(String filename, int numReg) {
+        Map<String, String> config = new HashMap<>();
+        config.put("registerAllocation", String.valueOf(numReg));
+        config.put("registerAllocator", "linear");
+        return TestUtils.backend(SpecsIo.getResource("fixtures/custom/" + filename + ".jmm"), config);
+    }
+
     static JasminResult getJasminResultOptBestReg(String filename) {
         Map<String, String> config = new HashMap<>();
         config.put("optimize", "true");
@@ -111,6 +124,164 @@ public class CustomTestsOptimizations {
         deadCodeHelper(filename, List.of(word), expected);
     }
 
+    static JasminResult getJasminResultDeadVars(String filename, Consumer<MethodDataFlowAnalysis> eliminateDeadVars) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        JmmSemanticsResult semanticsResult = TestUtils.analyse(
+                SpecsIo.getResource("fixtures/custom/" + filename + ".jmm"), config);
+
+        Optimizer optimizer = new Optimizer();
+        OllirResult ollirResult = optimizer.toOllir(optimizer.optimize(semanticsResult));
+        for (var method : ollirResult.getOllirClass().getMethods()) {
+            eliminateDeadVars.accept(new MethodDataFlowAnalysis(method, ollirResult));
+        }
+        return TestUtils.backend(ollirResult);
+    }
+
+    /**
+     * The reference the incremental dead code elimination is tested against: after every pass over the method, the
+     * CFG is built again and liveness is solved from scratch, until a pass removes nothing.
+     */
+    static void eliminateAllDeadVarsByFixpoint(Method method) {
+        boolean removedAny = false;
+        boolean removed;
+        do {
+            OllirUtils.rebuildCFG(method);
+            Map<Node, Set<String>> liveOut = calcLiveOut(method);
+
+            removed = false;
+            List<Instruction> instructions = method.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i);
+                // Unreachable instructions have no liveness information
+                if (!liveOut.containsKey(instruction)) continue;
+
+                String dest = getDefinedVariable(instruction);
+                if (dest == null || liveOut.get(instruction).contains(dest)) continue;
+
+                // The labels of an assignment move to the instruction after it, which is its only successor
+                for (String label: method.getLabels(instruction)) {
+                    method.getLabels().put(label, instructions.get(i + 1));
+                }
+                instructions.remove(i--);
+                removed = true;
+            }
+            removedAny |= removed;
+        } while (removed);
+
+        if (removedAny) method.buildVarTable();
+    }
+
+    private static Map<Node, Set<String>> calcLiveOut(Method method) {
+        List<Node> nodes = new ArrayList<>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> toVisit = new ArrayDeque<>(List.of(method.getBeginNode()));
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            if (node == null || !visited.add(node)) continue;
+            if (node instanceof Instruction) nodes.add(node);
+            toVisit.addAll(node.getSuccessors());
+        }
+
+        Map<Node, Set<String>> liveIn = new IdentityHashMap<>();
+        Map<Node, Set<String>> liveOut = new IdentityHashMap<>();
+        for (Node node: nodes) {
+            liveIn.put(node, new HashSet<>());
+            liveOut.put(node, new HashSet<>());
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (Node node: nodes) {
+                Set<String> out = liveOut.get(node);
+                for (Node succ: node.getSuccessors()) {
+                    if (liveIn.containsKey(succ)) out.addAll(liveIn.get(succ));
+                }
+
+                Set<String> in = new HashSet<>(out);
+                in.remove(getDefinedVariable((Instruction) node));
+                addUses((Instruction) node, in);
+                changed |= !in.equals(liveIn.put(node, in));
+            }
+        } while (changed);
+
+        return liveOut;
+    }
+
+    private static String getDefinedVariable(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand)) {
+            return dest.getName();
+        }
+        return null;
+    }
+
+    private static void addUses(Instruction instruction, Set<String> uses) {
+        List<Element> elements = new ArrayList<>();
+        if (instruction instanceof AssignInstruction assign) {
+            // Storing to an array element reads the array and its index
+            if (assign.getDest() instanceof ArrayOperand) elements.add(assign.getDest());
+            addUses(assign.getRhs(), uses);
+        } else if (instruction instanceof UnaryOpInstruction unary) {
+            elements.add(unary.getOperand());
+        } else if (instruction instanceof BinaryOpInstruction binary) {
+            elements.add(binary.getLeftOperand());
+            elements.add(binary.getRightOperand());
+        } else if (instruction instanceof ReturnInstruction ret) {
+            elements.add(ret.getOperand());
+        } else if (instruction instanceof CallInstruction call) {
+            elements.add(call.getFirstArg());
+            if (call.getListOfOperands() != null) elements.addAll(call.getListOfOperands());
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            elements.add(getField.getFirstOperand());
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            elements.add(putField.getFirstOperand());
+            elements.add(putField.getThirdOperand());
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            elements.add(singleOp.getSingleOperand());
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            elements.addAll(branch.getOperands());
+        }
+
+        for (Element element: elements) {
+            if (element instanceof ArrayOperand array) {
+                uses.add(array.getName());
+                for (Element index: array.getIndexOperands()) {
+                    if (index instanceof Operand operand) uses.add(operand.getName());
+                }
+            } else if (element instanceof Operand operand
+                    && operand.getType().getTypeOfElement() != ElementType.THIS) {
+                uses.add(operand.getName());
+            }
+        }
+    }
+
+    /**
+     * @return the names of the custom fixtures made of the given prefix and a number, e.g. DeadCode1
+     */
+    static List<String> getFixtures(String prefix) {
+        try {
+            File folder = new File(CustomTestsOptimizations.class.getClassLoader().getResource("fixtures/custom").toURI());
+            return Arrays.stream(folder.list())
+                    .filter(name -> name.matches(prefix + "\\d+\\.jmm"))
+                    .map(SpecsIo::removeExtension)
+                    .sorted()
+                    .toList();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void incrementalDeadCodeHelper(String filename) {
+        JasminResult fixpoint = getJasminResultDeadVars(filename,
+                dataFlowAnalysis -> eliminateAllDeadVarsByFixpoint(dataFlowAnalysis.getMethod()));
+        JasminResult incremental = getJasminResultDeadVars(filename, MethodDataFlowAnalysis::eliminateAllDeadVars);
+
+        CpUtils.assertEquals("Expected the incremental dead code elimination to match the fixpoint one",
+                fixpoint.getJasminCode(), incremental.getJasminCode(), incremental);
+    }
+
     public void constFoldAndPropHelper(String filename, String codeExpected, String expected, boolean optDiff) {
         JasminResult original = getJasminResult(filename);
         JasminResult optimized = getJasminResultOptBestReg(filename);
@@ -130,6 +301,28 @@ public class CustomTestsOptimizations {
         constFoldAndPropHelper(filename, codeExpected, expected, true);
     }
 
+    public void loopUnrollingHelper(String filename, int unrollFactor, String codeExpected, String expected) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "0");
+        config.put("unrollFactor", String.valueOf(unrollFactor));
+        JasminResult optimized = TestUtils.backend(SpecsIo.getResource("fixtures/custom/" + filename + ".jmm"), config);
+
+        CpUtils.runJasmin(optimized, expected);
+        CpUtils.matches(optimized, codeExpected);
+    }
+
+    public void valueNumberingHelper(String filename, List<String> words, String expected) {
+        JasminResult optimized = getJasminResultOptBestReg(filename);
+
+        CpUtils.runJasmin(optimized, expected);
+
+        for (var word : words) {
+            var wordOccurOpt = CpUtils.countOccurences(optimized, word);
+            CpUtils.assertEquals("Expected exactly 1 " + word, 1, wordOccurOpt, optimized);
+        }
+    }
+
     @Test
     public void eliminationOfUnnecessaryGotos1() {
         eliminationOfUnnecessaryGotosHelper("EliminationOfUnnecessaryGotos1", 1, getResults(Arrays.asList(
@@ -285,6 +478,20 @@ public class CustomTestsOptimizations {
         deadCodeHelper("UnusedVariable8", "777505", getResults(List.of(777506)));
     }
 
+    @Test
+    public void incrementalDeadCode() {
+        List<String> fixtures = getFixtures("DeadCode");
+        Assert.assertFalse("Expected DeadCode fixtures", fixtures.isEmpty());
+        fixtures.forEach(this::incrementalDeadCodeHelper);
+    }
+
+    @Test
+    public void incrementalUnusedVariable() {
+        List<String> fixtures = getFixtures("UnusedVariable");
+        Assert.assertFalse("Expected UnusedVariable fixtures", fixtures.isEmpty());
+        fixtures.forEach(this::incrementalDeadCodeHelper);
+    }
+
     @Test
     public void constProp1() {
         constFoldAndPropHelper("ConstProp1", "(bipush|sipush|ldc) 10\\s+invokevirtual ConstProp/foo\\(I\\)I", getResults(List.of()));
@@ -395,4 +602,128 @@ public class CustomTestsOptimizations {
                 ".limit stack \\d+\\s+.limit locals \\d+\\s+iconst_0\\s+ireturn",
                 getResults(List.of(0)));
     }
+
+    @Test
+    public void conditionalConstProp1() {
+        constFoldAndPropHelper("ConditionalConstProp1",
+                "(bipush|sipush|ldc) 7\\s+ireturn",
+                getResults(List.of(7)));
+    }
+
+    @Test
+    public void conditionalConstProp2() {
+        constFoldAndPropHelper("ConditionalConstProp2",
+                ".limit locals \\d+\\s+(\\w+:\\s+)*(bipush|sipush|ldc) 6\\s+ireturn",
+                getResults(List.of(6)));
+    }
+
+    @Test
+    public void valueNumbering1() {
+        valueNumberingHelper("ValueNumbering1", List.of("iaload", "getfield", "arraylength"), getResults(List.of(62)));
+    }
+
+    @Test
+    public void loopInvariant1() {
+        constFoldAndPropHelper("LoopInvariant1",
+                "BODY_0:((?!arraylength|getfield|imul)[\\s\\S])*if_icmplt BODY_0",
+                getResults(List.of(60)));
+    }
+
+    @Test
+    public void strengthReduction1() {
+        constFoldAndPropHelper("StrengthReduction1",
+                "BODY_0:((?!imul)[\\s\\S])*if_icmplt BODY_0",
+                getResults(List.of(42)));
+    }
+
+    @Test
+    public void loopUnrolling1() {
+        loopUnrollingHelper("LoopUnrolling1", 1,
+                "small\\(\\[I\\)I((?!if_|goto)[\\s\\S])*ireturn",
+                getResults(List.of(6, 21)));
+    }
+
+    @Test
+    public void loopUnrolling2() {
+        loopUnrollingHelper("LoopUnrolling1", 4,
+                "BODY_\\d+_\\d+:(((?!if_)[\\s\\S])*iaload){4}((?!if_)[\\s\\S])*if_icmplt BODY_\\d+_\\d+",
+                getResults(List.of(6, 21)));
+    }
+
+    @Test
+    public void loopUnrolling3() {
+        loopUnrollingHelper("LoopUnrolling2", 1,
+                "fill\\(\\[I\\)I((?!iadd|imul|if_|goto)[\\s\\S])*ireturn",
+                getResults(List.of(10, 7)));
+    }
+
+    @Test
+    public void registerAllocationSpill() {
+        JasminResult optimized = getJasminResultReg("RegisterAllocation1", 1);
+
+        CpUtils.runJasmin(optimized, getResults(List.of(26, 42, 5, 5)));
+
+        // a, b, c and d are live at the same time in manyLive, which does not fit in one register
+        var warnings = optimized.getReports().stream()
+                .filter(report -> report.getType() == ReportType.WARNING)
+                .filter(report -> report.getMessage().startsWith("Not enough registers"))
+                .toList();
+        CpUtils.assertEquals("Expected one spill warning", 1, warnings.size(), optimized);
+        CpUtils.assertTrue("Expected the spill warning to be about manyLive",
+                warnings.get(0).getMessage().contains("method manyLive"), optimized);
+    }
+
+    @Test
+    public void registerAllocationCoalescing() {
+        JasminResult optimized = getJasminResultReg("RegisterAllocation1", 0);
+
+        CpUtils.runJasmin(optimized, getResults(List.of(26, 42, 5, 5)));
+
+        // y = x is left out once y shares the register of x, so only the product is stored
+        String method = CpUtils.getJasminMethod(optimized, "copy");
+        CpUtils.matches(method, "\\.limit\\s+locals\\s+2\\s+iload_1\\s+iconst_2\\s+imul");
+        CpUtils.assertEquals("Expected exactly 1 istore in copy", 1,
+                method.split("istore", -1).length - 1, optimized);
+    }
+
+    @Test
+    public void registerAllocationLinearScan() {
+        CpUtils.runJasmin(getJasminResultLinearScan("RegisterAllocation1", 0), getResults(List.of(26, 42, 5, 5)));
+        CpUtils.runJasmin(getJasminResultLinearScan("LoopUnrolling1", 0), getResults(List.of(6, 21)));
+
+        JasminResult spilled = getJasminResultLinearScan("RegisterAllocation1", 1);
+        CpUtils.runJasmin(spilled, getResults(List.of(26, 42, 5, 5)));
+        CpUtils.assertTrue("Expected a spill warning for manyLive", spilled.getReports().stream()
+                        .anyMatch(report -> report.getType() == ReportType.WARNING
+                                && report.getMessage().contains("method manyLive")),
+                spilled);
+    }
+
+    @Test
+    public void registerAllocationDeadParameter() {
+        JasminResult optimized = getJasminResultReg("RegisterAllocation1", 0);
+
+        CpUtils.runJasmin(optimized, getResults(List.of(26, 42, 5, 5)));
+
+        // x is never read, so a takes its register instead of a third one
+        String method = CpUtils.getJasminMethod(optimized, "deadParam");
+        CpUtils.matches(method, "\\.limit\\s+locals\\s+2\\s");
+        CpUtils.matches(method, "istore_1");
+    }
+
+    @Test
+    public void parallelMethodsDeterministic() {
+        // The methods of Life are analysed, allocated and translated in parallel, and must come out the same each time
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "0");
+        String code = SpecsIo.getResource("fixtures/public/Life.jmm");
+
+        JasminResult first = TestUtils.backend(code, config);
+        for (int i = 0; i < 10; i++) {
+            JasminResult other = TestUtils.backend(code, new HashMap<>(config));
+            CpUtils.assertEquals("Expected the same code on every compilation", first.getJasminCode(),
+                    other.getJasminCode(), other);
+        }
+    }
 }